@@ -1,5 +1,7 @@
 package com.example.accountable;
 
+import com.google.firebase.Timestamp;
+
 public class AccessRequest {
     private String requestId;
     private String userId;
@@ -12,6 +14,7 @@ public class AccessRequest {
     private String requestType; // "APP_ACCESS" or "UNRESTRICT_APP"
     private String reason; // user provided reason
     private String status; // "pending", "granted", "denied"
+    private Timestamp expireAt; // deleted after this, see DocumentExpiry
 
     public AccessRequest() {
         // Required for Firebase
@@ -29,6 +32,7 @@ public class AccessRequest {
         this.reason = reason;
         this.requestTime = System.currentTimeMillis();
         this.status = "pending";
+        this.expireAt = DocumentExpiry.expireAt(DocumentExpiry.REQUEST_LIFETIME);
     }
 
     // Getters and Setters
@@ -43,10 +47,12 @@ public class AccessRequest {
     public String getRequestType() { return requestType; }
     public String getReason() { return reason; }
     public String getStatus() { return status; }
+    public Timestamp getExpireAt() { return expireAt; }
 
     public void setRequestedDuration(long requestedDuration) { this.requestedDuration = requestedDuration; }
     public void setGrantedDuration(long grantedDuration) { this.grantedDuration = grantedDuration; }
     public void setRequestType(String requestType) { this.requestType = requestType; }
     public void setReason(String reason) { this.reason = reason; }
     public void setStatus(String status) { this.status = status; }
+    public void setExpireAt(Timestamp expireAt) { this.expireAt = expireAt; }
 }
@@ -10,12 +10,17 @@ import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public class AccountabilityPartnerActivity extends AppCompatActivity {
 
@@ -28,6 +33,11 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
     private Button addPartnerButton, removePartnerButton;
     private ProgressBar progressBar;
 
+    // Registered while the screen exists, so a partner change made anywhere shows up here
+    private final OnSuccessListener<DocumentSnapshot> partnerObserver = this::showCurrentPartner;
+    private boolean partnerShown = false;
+    private String shownPartnerId;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -76,26 +86,33 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
 
     private void loadCurrentPartner() {
         showProgress(true);
+        UserDocumentRepository.getInstance().observe(partnerObserver);
+    }
 
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    showProgress(false);
-                    if (documentSnapshot.exists()) {
-                        String mainPartnerId = documentSnapshot.getString("mainPartnerId");
-                        if (mainPartnerId != null) {
-                            loadPartnerDetails(mainPartnerId);
-                        } else {
-                            currentPartnerText.setText("No accountability partner set");
-                            removePartnerButton.setVisibility(View.GONE);
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    showProgress(false);
-                    Toast.makeText(this, "Failed to load partner info: " + e.getMessage(),
-                                 Toast.LENGTH_LONG).show();
-                });
+    private void showCurrentPartner(DocumentSnapshot documentSnapshot) {
+        showProgress(false);
+        if (!documentSnapshot.exists()) {
+            return;
+        }
+        String mainPartnerId = documentSnapshot.getString("mainPartnerId");
+        // Most updates touch other fields; only look the partner up again when it changed
+        if (partnerShown && Objects.equals(mainPartnerId, shownPartnerId)) {
+            return;
+        }
+        partnerShown = true;
+        shownPartnerId = mainPartnerId;
+        if (mainPartnerId != null) {
+            loadPartnerDetails(mainPartnerId);
+        } else {
+            currentPartnerText.setText("No accountability partner set");
+            removePartnerButton.setVisibility(View.GONE);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        UserDocumentRepository.getInstance().removeObserver(partnerObserver);
     }
 
     private void loadPartnerDetails(String partnerId) {
@@ -130,88 +147,29 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
 
         showProgress(true);
 
-        // First, let's check what users exist in the database for debugging
-        Toast.makeText(this, "Searching for user: " + partnerEmail, Toast.LENGTH_SHORT).show();
-
-        // Find user by email
-        db.collection("users")
-                .whereEqualTo("email", partnerEmail)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        String partnerId = queryDocumentSnapshots.getDocuments().get(0).getId();
-
-                        if (partnerId.equals(currentUserId)) {
-                            showProgress(false);
-                            Toast.makeText(this, "You cannot be your own accountability partner!",
-                                         Toast.LENGTH_SHORT).show();
-                            return;
-                        }
-
-                        setMainPartner(partnerId, partnerEmail);
-                    } else {
-                        // Let's check what users actually exist
-                        checkExistingUsers(partnerEmail);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    showProgress(false);
-                    Toast.makeText(this, "Failed to search for user: " + e.getMessage(),
-                                 Toast.LENGTH_LONG).show();
-                });
-    }
-
-    private void checkExistingUsers(String searchedEmail) {
-        db.collection("users")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    showProgress(false);
-
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        Toast.makeText(this, "❌ No users found in database! Something is wrong.",
+        // Find user by email - a single index document read
+        EmailIndex.lookup(db, partnerEmail,
+                partnerId -> {
+                    if (partnerId == null) {
+                        showProgress(false);
+                        Toast.makeText(this, "❌ No account found for '" + partnerEmail + "'.\n\n" +
+                                     "💡 Check the spelling, or ask them to create an account first.",
                                      Toast.LENGTH_LONG).show();
                         return;
                     }
 
-                    StringBuilder message = new StringBuilder();
-                    message.append("❌ User '").append(searchedEmail).append("' not found!\n\n");
-                    message.append("📋 Available users in database:\n");
-
-                    int userCount = 0;
-                    FirebaseUser currentUser = mAuth.getCurrentUser();
-                    String currentUserEmail = currentUser != null ? currentUser.getEmail() : "";
-
-                    for (com.google.firebase.firestore.QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        String email = doc.getString("email");
-                        String displayName = doc.getString("displayName");
-
-                        if (email != null) {
-                            userCount++;
-                            message.append(userCount).append(". ");
-
-                            if (email.equals(currentUserEmail)) {
-                                message.append("👤 ").append(email).append(" (YOU)");
-                            } else {
-                                message.append("👥 ").append(email);
-                            }
-
-                            if (displayName != null && !displayName.isEmpty()) {
-                                message.append(" - ").append(displayName);
-                            }
-                            message.append("\n");
-                        }
+                    if (partnerId.equals(currentUserId)) {
+                        showProgress(false);
+                        Toast.makeText(this, "You cannot be your own accountability partner!",
+                                     Toast.LENGTH_SHORT).show();
+                        return;
                     }
 
-                    message.append("\n💡 Solutions:\n");
-                    message.append("• Ask '").append(searchedEmail).append("' to create an account first\n");
-                    message.append("• Or use one of the emails above\n");
-                    message.append("• Make sure email is typed exactly as shown");
-
-                    Toast.makeText(this, message.toString(), Toast.LENGTH_LONG).show();
-                })
-                .addOnFailureListener(e -> {
+                    setMainPartner(partnerId, partnerEmail);
+                },
+                e -> {
                     showProgress(false);
-                    Toast.makeText(this, "❌ Database error: " + e.getMessage(),
+                    Toast.makeText(this, "Failed to search for user: " + e.getMessage(),
                                  Toast.LENGTH_LONG).show();
                 });
     }
@@ -229,6 +187,7 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
                         createUserDocument(currentUser);
                     } else {
                         Toast.makeText(this, "✅ User profile exists: " + currentUser.getEmail(), Toast.LENGTH_LONG).show();
+                        EmailIndex.ensureIndexed(this, db, currentUserId, currentUser.getEmail());
                     }
                 })
                 .addOnFailureListener(e -> {
@@ -252,8 +211,10 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
         String docPath = "users/" + user.getUid();
         Toast.makeText(this, "💾 Creating document at: " + docPath, Toast.LENGTH_SHORT).show();
 
-        db.collection("users").document(user.getUid())
-                .set(userProfile)
+        WriteBatch batch = db.batch();
+        batch.set(db.collection("users").document(user.getUid()), userProfile);
+        EmailIndex.addTo(batch, db, user.getUid(), user.getEmail());
+        batch.commit()
                 .addOnSuccessListener(aVoid -> {
                     Toast.makeText(this, "✅ SUCCESS! User profile created for: " + user.getEmail(), Toast.LENGTH_LONG).show();
                 })
@@ -270,35 +231,41 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
     private void setMainPartner(String partnerId, String partnerEmail) {
         Toast.makeText(this, "🔄 Setting up partnership relationships...", Toast.LENGTH_SHORT).show();
 
-        // Update current user's mainPartnerId
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("mainPartnerId", partnerId);
+        // Both sides of the partnership and the unlock code secret commit together, so a failure can't
+        // leave a one-sided partnership behind. The previous partner is read inside the transaction rather
+        // than from a cached copy, so their side is always the one taken down.
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        DocumentReference userRef = db.collection("users").document(currentUserId);
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot userDoc = transaction.get(userRef);
+                    String previousPartnerId = userDoc.getString("mainPartnerId");
+                    String email = userDoc.getString("email") != null ? userDoc.getString("email")
+                            : (currentUser != null ? currentUser.getEmail() : null);
+
+                    transaction.update(userRef, "mainPartnerId", partnerId);
+                    transaction.update(db.collection("users").document(partnerId),
+                            "partners", FieldValue.arrayUnion(currentUserId));
+                    HelpeesIndex.add(transaction, db, partnerId, currentUserId, email, userDoc.getString("displayName"));
+
+                    // Replacing a partner: take this user out of the previous partner's list in the same commit
+                    if (previousPartnerId != null && !previousPartnerId.equals(partnerId)) {
+                        transaction.update(db.collection("users").document(previousPartnerId),
+                                "partners", FieldValue.arrayRemove(currentUserId));
+                        HelpeesIndex.remove(transaction, db, previousPartnerId, currentUserId);
+                    }
 
-        db.collection("users").document(currentUserId)
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(this, "✅ Step 1: You now have " + partnerEmail + " as your partner",
-                                 Toast.LENGTH_SHORT).show();
-
-                    // Add current user to partner's partners list
-                    db.collection("users").document(partnerId)
-                            .update("partners", FieldValue.arrayUnion(currentUserId))
-                            .addOnSuccessListener(aVoid2 -> {
-                                showProgress(false);
-                                Toast.makeText(this, "✅ Step 2: " + partnerEmail + " can now see you in 'People I Help'!",
-                                             Toast.LENGTH_LONG).show();
-                                partnerEmailInput.setText("");
-                                loadCurrentPartner();
-                            })
-                            .addOnFailureListener(e -> {
-                                showProgress(false);
-                                Toast.makeText(this, "❌ Step 2 failed: " + e.getMessage(),
-                                             Toast.LENGTH_LONG).show();
-                            });
+                    return UnlockCodes.stageSecret(db, transaction, currentUserId, partnerId);
+                })
+                .addOnSuccessListener(secret -> {
+                    UnlockCodes.cacheSecret(this, currentUserId, secret);
+                    showProgress(false);
+                    Toast.makeText(this, "✅ " + partnerEmail + " is now your partner and can see you in 'People I Help'!",
+                                 Toast.LENGTH_LONG).show();
+                    partnerEmailInput.setText("");
                 })
                 .addOnFailureListener(e -> {
                     showProgress(false);
-                    Toast.makeText(this, "❌ Step 1 failed: " + e.getMessage(),
+                    Toast.makeText(this, "❌ Failed to set partner: " + e.getMessage(),
                                  Toast.LENGTH_LONG).show();
                 });
     }
@@ -306,42 +273,32 @@ public class AccountabilityPartnerActivity extends AppCompatActivity {
     private void removePartner() {
         showProgress(true);
 
-        // Get current partner ID first
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    String mainPartnerId = documentSnapshot.getString("mainPartnerId");
-                    if (mainPartnerId != null) {
-                        // Remove partner relationship
-                        Map<String, Object> updates = new HashMap<>();
-                        updates.put("mainPartnerId", null);
-
-                        db.collection("users").document(currentUserId)
-                                .update(updates)
-                                .addOnSuccessListener(aVoid -> {
-                                    // Remove current user from partner's partners list
-                                    db.collection("users").document(mainPartnerId)
-                                            .update("partners", FieldValue.arrayRemove(currentUserId))
-                                            .addOnCompleteListener(task -> {
-                                                showProgress(false);
-                                                Toast.makeText(this, "Partner removed successfully",
-                                                             Toast.LENGTH_SHORT).show();
-                                                loadCurrentPartner();
-                                            });
-                                })
-                                .addOnFailureListener(e -> {
-                                    showProgress(false);
-                                    Toast.makeText(this, "Failed to remove partner: " + e.getMessage(),
-                                                 Toast.LENGTH_LONG).show();
-                                });
+        // The current partner is read inside the transaction, and both sides of the relationship go in
+        // the same commit
+        DocumentReference userRef = db.collection("users").document(currentUserId);
+        db.runTransaction(transaction -> {
+                    String mainPartnerId = transaction.get(userRef).getString("mainPartnerId");
+                    if (mainPartnerId == null) {
+                        return false;
+                    }
+                    transaction.update(userRef, "mainPartnerId", null);
+                    transaction.update(db.collection("users").document(mainPartnerId),
+                            "partners", FieldValue.arrayRemove(currentUserId));
+                    HelpeesIndex.remove(transaction, db, mainPartnerId, currentUserId);
+                    return true;
+                })
+                .addOnSuccessListener(removed -> {
+                    showProgress(false);
+                    if (removed) {
+                        Toast.makeText(this, "Partner removed successfully",
+                                     Toast.LENGTH_SHORT).show();
                     } else {
-                        showProgress(false);
                         Toast.makeText(this, "No partner to remove", Toast.LENGTH_SHORT).show();
                     }
                 })
                 .addOnFailureListener(e -> {
                     showProgress(false);
-                    Toast.makeText(this, "Failed to get current partner: " + e.getMessage(),
+                    Toast.makeText(this, "Failed to remove partner: " + e.getMessage(),
                                  Toast.LENGTH_LONG).show();
                 });
     }
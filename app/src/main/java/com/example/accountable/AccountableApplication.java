@@ -0,0 +1,25 @@
+package com.example.accountable;
+
+import android.app.Application;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
+
+public class AccountableApplication extends Application {
+
+    // Room for the hot documents (users, limits, requests) plus history, without unbounded growth
+    private static final long FIRESTORE_CACHE_SIZE_BYTES = 40L * 1024 * 1024;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Must run before any other Firestore call in the process
+        FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(FIRESTORE_CACHE_SIZE_BYTES)
+                        .build())
+                .build();
+        FirebaseFirestore.getInstance().setFirestoreSettings(settings);
+    }
+}
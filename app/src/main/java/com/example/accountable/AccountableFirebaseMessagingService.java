@@ -2,9 +2,6 @@ package com.example.accountable;
 
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Context;
-import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
@@ -26,44 +23,8 @@ public class AccountableFirebaseMessagingService extends FirebaseMessagingServic
     }
 
     private void setupBackgroundListener() {
-        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
-        if (currentUser == null) return;
-
-        String userId = currentUser.getUid();
-
-        // Listen for instant notifications targeted at this user
-        // This listener is more efficient and will trigger notifications even when app is backgrounded
-        FirebaseFirestore.getInstance()
-            .collection("instantNotifications")
-            .whereEqualTo("fcmToken", currentUser.getUid()) // Match by user ID for better targeting
-            .whereEqualTo("status", "pending")
-            .addSnapshotListener((snapshots, error) -> {
-                if (error != null || snapshots == null) return;
-
-                for (com.google.firebase.firestore.DocumentChange change : snapshots.getDocumentChanges()) {
-                    if (change.getType() == com.google.firebase.firestore.DocumentChange.Type.ADDED) {
-                        com.google.firebase.firestore.DocumentSnapshot doc = change.getDocument();
-                        java.util.Map<String, Object> data = doc.getData();
-                        if (data != null) {
-                            String userName = (String) data.get("userName");
-                            String appName = (String) data.get("appName");
-                            String requestId = (String) data.get("requestId");
-                            Long requestedSeconds = (Long) data.get("requestedSeconds");
-                            String priority = (String) data.get("priority");
-
-                            if (userName != null && appName != null && requestId != null) {
-                                // Show notification immediately
-                                showNotification(userName, appName, requestId, requestedSeconds != null ? requestedSeconds : 0L);
-
-                                // Mark as delivered
-                                doc.getReference().update("status", "delivered");
-
-                                Log.d("FCMService", "Instant notification delivered for: " + appName);
-                            }
-                        }
-                    }
-                }
-            });
+        // Shared with MainActivity - only one inbox listener runs per process
+        RequestInbox.start(this);
     }
 
     @Override
@@ -103,7 +64,8 @@ public class AccountableFirebaseMessagingService extends FirebaseMessagingServic
             }
 
 
-            showNotification(userName, appName, requestId, requestedSeconds);
+            // Dropped if the inbox listener already showed this request
+            RequestInbox.deliver(this, requestId, userName, appName, requestedSeconds);
         }
     }
 
@@ -123,36 +85,4 @@ public class AccountableFirebaseMessagingService extends FirebaseMessagingServic
             manager.createNotificationChannel(channel);
         }
     }
-
-    private void showNotification(String userName, String appName, String requestId, long requestedSeconds) {
-        // Create intent for PartnerApprovalActivity
-        Intent intent = new Intent(this, PartnerApprovalActivity.class);
-        intent.putExtra("requestId", requestId);
-        intent.putExtra("requesterName", userName);
-        intent.putExtra("appName", appName);
-        intent.putExtra("requestTime", new java.text.SimpleDateFormat("HH:mm", java.util.Locale.getDefault()).format(new java.util.Date()));
-        intent.putExtra("requestedSeconds", requestedSeconds); // Pass the requested seconds
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            this,
-            requestId.hashCode(), // Use unique ID
-            intent,
-            PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setSmallIcon(android.R.drawable.ic_dialog_alert)
-            .setContentTitle("🔒 Access Request")
-            .setContentText(userName + " wants to access " + appName)
-            .setStyle(new NotificationCompat.BigTextStyle()
-                .bigText(userName + " is requesting access to " + appName + ". Tap to approve or deny."))
-            .setPriority(NotificationCompat.PRIORITY_HIGH)
-            .setCategory(NotificationCompat.CATEGORY_MESSAGE)
-            .setAutoCancel(true)
-            .setContentIntent(pendingIntent);
-
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        manager.notify(requestId.hashCode(), builder.build());
-    }
 }
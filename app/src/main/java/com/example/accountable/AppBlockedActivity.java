@@ -2,14 +2,19 @@ package com.example.accountable;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.text.InputType;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
+import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 
 public class AppBlockedActivity extends AppCompatActivity {
 
@@ -17,6 +22,7 @@ public class AppBlockedActivity extends AppCompatActivity {
     private TextView blockReason;
     private TextView usageStats;
     private Button requestAccessButton;
+    private Button enterCodeButton;
     private Button goHomeButton;
 
     private String packageName;
@@ -58,11 +64,13 @@ public class AppBlockedActivity extends AppCompatActivity {
         blockReason = findViewById(R.id.blockReason);
         usageStats = findViewById(R.id.usageStats);
         requestAccessButton = findViewById(R.id.requestAccessButton);
+        enterCodeButton = findViewById(R.id.enterCodeButton);
         goHomeButton = findViewById(R.id.goHomeButton);
     }
 
     private void setupClickListeners() {
         requestAccessButton.setOnClickListener(v -> requestPartnerAccess());
+        enterCodeButton.setOnClickListener(v -> showUnlockCodeDialog());
         goHomeButton.setOnClickListener(v -> goToHomeScreen());
     }
 
@@ -76,6 +84,11 @@ public class AppBlockedActivity extends AppCompatActivity {
             blockReason.setText("Limit exceeded");
             usageStats.setText("Contact your partner if you need access to this app.");
         }
+
+        long allowanceSeconds = AutoGrantAllowances.remainingSeconds(this, packageName);
+        if (allowanceSeconds > 0) {
+            usageStats.setText(formatTimeDescription(allowanceSeconds) + " available today without asking your partner.");
+        }
     }
 
     private void requestPartnerAccess() {
@@ -91,15 +104,18 @@ public class AppBlockedActivity extends AppCompatActivity {
         TimeSelectionDialog.show(this, new TimeSelectionDialog.TimeSelectionListener() {
             @Override
             public void onTimeSelected(long totalSeconds) {
-                db.collection("users").document(currentUserId)
-                        .get()
-                        .addOnSuccessListener(documentSnapshot -> {
+                // Covered by the partner's pre-authorized allowance - grant right away, no round trip
+                if (AutoGrantAllowances.tryConsume(AppBlockedActivity.this, packageName, totalSeconds)) {
+                    grantFromAllowance(totalSeconds);
+                    return;
+                }
+                UserDocumentRepository.getInstance()
+                        .get(documentSnapshot -> {
                             String partnerId = documentSnapshot.getString("mainPartnerId");
                             if (partnerId != null) {
                                 sendAccessRequest(partnerId, totalSeconds);
                             }
-                        })
-                        .addOnFailureListener(e -> {
+                        }, e -> {
                             // Re-enable button on error
                             requestAccessButton.setText("Request Failed - Retry");
                             requestAccessButton.setEnabled(true);
@@ -115,12 +131,80 @@ public class AppBlockedActivity extends AppCompatActivity {
         });
     }
 
+    private void showUnlockCodeDialog() {
+        if (currentUserId == null) {
+            return;
+        }
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        input.setHint("6-digit code from your partner");
+
+        new AlertDialog.Builder(this)
+                .setTitle("Enter unlock code")
+                .setView(input)
+                .setPositiveButton("Unlock", (dialog, which) -> redeemUnlockCode(input.getText().toString().trim()))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void redeemUnlockCode(String code) {
+        // Verified against the locally cached secret - no network needed
+        long lockout = UnlockCodes.lockoutRemaining(this, System.currentTimeMillis());
+        if (lockout > 0) {
+            long minutesLeft = (lockout + 59999) / 60000;
+            Toast.makeText(this, "Too many wrong codes. Try again in " + minutesLeft + " min", Toast.LENGTH_LONG).show();
+            return;
+        }
+        int minutes = UnlockCodes.redeem(this, currentUserId, code, System.currentTimeMillis());
+        if (minutes <= 0) {
+            Toast.makeText(this, "Invalid or expired code", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        // Firestore applies the write locally right away and syncs it once the device is back online
+        saveTemporaryAccess(packageName, now + minutes * 60 * 1000L);
+
+        java.util.Map<String, Object> grantLog = new java.util.HashMap<>();
+        grantLog.put("userId", currentUserId);
+        grantLog.put("packageName", packageName);
+        grantLog.put("appName", appName);
+        grantLog.put("grantedSeconds", minutes * 60L);
+        grantLog.put("source", "unlock_code");
+        grantLog.put("timestamp", now);
+        grantLog.put(DocumentExpiry.FIELD, DocumentExpiry.expireAt(DocumentExpiry.HISTORY_LIFETIME));
+        db.collection("autoGrants").add(grantLog)
+                .addOnFailureListener(e -> Log.e("AppBlocked", "Failed to log unlock code grant", e));
+
+        Toast.makeText(this, minutes + " minutes unlocked", Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
+    private void grantFromAllowance(long grantedSeconds) {
+        long now = System.currentTimeMillis();
+        saveTemporaryAccess(packageName, now + grantedSeconds * 1000);
+
+        // Logged for the partner in the background; the grant does not wait for it
+        java.util.Map<String, Object> grantLog = new java.util.HashMap<>();
+        grantLog.put("userId", currentUserId);
+        grantLog.put("packageName", packageName);
+        grantLog.put("appName", appName);
+        grantLog.put("grantedSeconds", grantedSeconds);
+        grantLog.put("timestamp", now);
+        grantLog.put(DocumentExpiry.FIELD, DocumentExpiry.expireAt(DocumentExpiry.HISTORY_LIFETIME));
+        db.collection("autoGrants").add(grantLog)
+                .addOnFailureListener(e -> Log.e("AppBlocked", "Failed to log auto grant", e));
+
+        Toast.makeText(this, formatTimeDescription(grantedSeconds) + " granted from your allowance",
+                Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
     private void sendAccessRequest(String partnerId, long requestedSeconds) {
 
         // Get user's name first
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(userDoc -> {
+        UserDocumentRepository.getInstance()
+                .get(userDoc -> {
                     String userName = userDoc.getString("displayName");
                     final String finalUserName = (userName == null) ? "Someone" : userName;
                     final String finalAppName = appName;
@@ -138,14 +222,16 @@ public class AppBlockedActivity extends AppCompatActivity {
                             "User requested " + timeDescription + " of access"
                     );
 
-                    // Save AccessRequest to Firebase using the new structure
-                    db.collection("requests").document(accessRequest.getRequestId())
-                            .set(accessRequest)
+                    // The request and its single partner notification commit together - no half-sent request
+                    // the partner never hears about. The notification is addressed by uid, so no token read is needed.
+                    WriteBatch batch = db.batch();
+                    batch.set(db.collection("requests").document(accessRequest.getRequestId()), accessRequest);
+                    batch.set(RequestInbox.documentFor(db, partnerId, accessRequest.getRequestId()),
+                            RequestInbox.buildNotification(partnerId, accessRequest.getRequestId(), finalUserName,
+                                    finalAppName, requestedSeconds, "access_request",
+                                    finalUserName + " wants " + finalAppName + " access for " + timeDescription));
+                    batch.commit()
                             .addOnSuccessListener(aVoid -> {
-                                // Send FCM notification to partner
-                                sendNotificationToPartner(partnerId, finalUserName, finalAppName,
-                                        accessRequest.getRequestId(), requestedSeconds);
-
                                 requestAccessButton.setText("Request Sent ✓ (" + timeDescription + ")");
                                 requestAccessButton.setEnabled(false);
 
@@ -154,61 +240,12 @@ public class AppBlockedActivity extends AppCompatActivity {
                             })
                             .addOnFailureListener(e -> {
                                 // Handle error
+                                Log.e("FCM", "Failed to send access request", e);
                                 requestAccessButton.setText("Request Failed - Retry");
                             });
                 });
     }
 
-    private void sendNotificationToPartner(String partnerId, String userName, String appName, String requestId, long requestedSeconds) {
-        // Get partner's FCM token
-        db.collection("users").document(partnerId)
-                .get()
-                .addOnSuccessListener(partnerDoc -> {
-                    String fcmToken = partnerDoc.getString("fcmToken");
-                    if (fcmToken != null) {
-                        // Send actual FCM notification using HTTP API
-                        sendFCMNotification(fcmToken, userName, appName, requestId, requestedSeconds);
-                    } else {
-                        // FCM token not found
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("FCM", "Failed to get partner FCM token", e);
-                });
-    }
-
-    private void sendFCMNotification(String fcmToken, String userName, String appName, String requestId, long requestedSeconds) {
-        // For free Firebase plan, we use a combination of Firestore trigger + local notification
-        // This creates a Firestore document that triggers the FCM service on the partner's device
-        String timeDescription = formatTimeDescription(requestedSeconds);
-
-        java.util.Map<String, Object> notificationData = new java.util.HashMap<>();
-        notificationData.put("fcmToken", fcmToken);
-        notificationData.put("requestId", requestId);
-        notificationData.put("userName", userName);
-        notificationData.put("appName", appName);
-        notificationData.put("requestedSeconds", requestedSeconds);
-        notificationData.put("timeDescription", timeDescription);
-        notificationData.put("message", userName + " wants " + appName + " access for " + timeDescription);
-        notificationData.put("type", "access_request");
-        notificationData.put("timestamp", System.currentTimeMillis());
-        notificationData.put("status", "pending");
-        notificationData.put("priority", "high"); // Mark as high priority for immediate delivery
-
-        // Save to Firestore - this will be picked up by the FCM service via real-time listeners
-        // The FCM service will display the notification even if app is closed
-        db.collection("instantNotifications").add(notificationData)
-                .addOnSuccessListener(documentReference -> {
-                    Log.d("FCM", "Instant notification created: " + documentReference.getId());
-
-                    // Also save to pendingNotifications as backup for MainActivity listener
-                    db.collection("pendingNotifications").add(notificationData);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("FCM", "Failed to create instant notification", e);
-                });
-    }
-
     private void monitorRequestResponse(String requestId) {
         // Listen for real-time updates to the access request
         db.collection("requests").document(requestId)
@@ -0,0 +1,102 @@
+package com.example.accountable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Preallocated single-producer/single-consumer queue of window events.
+// The accessibility callback publishes (package id, event type, timestamp) records without locks or
+// allocation once a package has been seen, and the engine drains them on its own thread. A full ring
+// drops the newest event and counts it rather than blocking the producer.
+public final class AppEventRing {
+
+    public interface Consumer {
+        void onEvent(String packageName, int eventType, long timestamp);
+    }
+
+    private final int mask;
+    private final int[] packageIds;
+    private final int[] eventTypes;
+    private final long[] timestamps;
+
+    // Next slot to write (producer-owned) and next slot to read (consumer-owned)
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+
+    // Package interning: ids are assigned by the producer, names are read by the consumer
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private volatile String[] names = new String[32];
+    private int nextId = 0;
+
+    public AppEventRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        packageIds = new int[size];
+        eventTypes = new int[size];
+        timestamps = new long[size];
+    }
+
+    // Producer only. Returns false if the record was dropped because the ring is full.
+    public boolean publish(String packageName, int eventType, long timestamp) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            overflowCount.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (t & mask);
+        packageIds[slot] = intern(packageName);
+        eventTypes[slot] = eventType;
+        timestamps[slot] = timestamp;
+        // Ordered store makes the slot contents visible before the new tail
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    // Consumer only. Returns the number of records handed to the consumer.
+    public int drain(Consumer consumer) {
+        long h = head.get();
+        long t = tail.get();
+        String[] currentNames = names;
+        int count = 0;
+        while (h < t) {
+            int slot = (int) (h & mask);
+            String packageName = currentNames[packageIds[slot]];
+            int eventType = eventTypes[slot];
+            long timestamp = timestamps[slot];
+            h++;
+            // Release the slot before running the consumer so the producer is never held up by it
+            head.lazySet(h);
+            consumer.onEvent(packageName, eventType, timestamp);
+            count++;
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    private int intern(String packageName) {
+        Integer id = idsByName.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        int newId = nextId++;
+        String[] current = names;
+        if (newId >= current.length) {
+            String[] grown = new String[current.length * 2];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[newId] = packageName;
+            names = grown;
+        } else {
+            current[newId] = packageName;
+        }
+        idsByName.put(packageName, newId);
+        return newId;
+    }
+}
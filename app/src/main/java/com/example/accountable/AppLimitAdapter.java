@@ -31,20 +31,10 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_app_limit, parent, false);
-        return new ViewHolder(view);
-    }
-
-    @Override
-    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        PartnerControlActivity.AppLimitInfo app = apps.get(position);
-
-        holder.appNameText.setText(app.appName);
+        ViewHolder holder = new ViewHolder(view);
 
-        // Set up the editable limit field
-        holder.limitEditText.setText(String.valueOf(app.dailyLimitMinutes));
-
-        // Set up text change listener for direct editing
-        holder.limitEditText.addTextChangedListener(new TextWatcher() {
+        // One watcher per row, created once; it edits whichever app the row is bound to
+        holder.limitWatcher = new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
 
@@ -53,11 +43,15 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
 
             @Override
             public void afterTextChanged(Editable s) {
+                PartnerControlActivity.AppLimitInfo app = holder.boundApp;
+                if (app == null) {
+                    return;
+                }
                 try {
                     String text = s.toString().trim();
                     if (!text.isEmpty()) {
                         int minutes = Integer.parseInt(text);
-                        if (minutes >= 0 && minutes <= 480) { // 0 to 8 hours
+                        if (minutes >= 0 && minutes <= 480 && minutes != app.dailyLimitMinutes) { // 0 to 8 hours
                             app.dailyLimitMinutes = minutes;
                             if (limitChangeListener != null) {
                                 limitChangeListener.onLimitChanged(app, minutes);
@@ -68,7 +62,24 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
                     // Invalid number, ignore
                 }
             }
-        });
+        };
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        PartnerControlActivity.AppLimitInfo app = apps.get(position);
+
+        holder.appNameText.setText(app.appName);
+
+        // Detach while the text is set programmatically so binding never reports an edit
+        holder.limitEditText.removeTextChangedListener(holder.limitWatcher);
+        holder.boundApp = app;
+        String limitText = String.valueOf(app.dailyLimitMinutes);
+        if (!limitText.contentEquals(holder.limitEditText.getText())) {
+            holder.limitEditText.setText(limitText);
+        }
+        holder.limitEditText.addTextChangedListener(holder.limitWatcher);
 
         // Set up increase/decrease buttons
         holder.decreaseButton.setOnClickListener(v -> {
@@ -92,8 +103,15 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
         holder.preset60Button.setOnClickListener(v -> setLimit(holder, app, 60));
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        holder.limitEditText.removeTextChangedListener(holder.limitWatcher);
+        holder.boundApp = null;
+    }
+
     private void updateLimitDisplay(ViewHolder holder, PartnerControlActivity.AppLimitInfo app) {
-        holder.limitEditText.setText(String.valueOf(app.dailyLimitMinutes));
+        showLimit(holder, app.dailyLimitMinutes);
         if (limitChangeListener != null) {
             limitChangeListener.onLimitChanged(app, app.dailyLimitMinutes);
         }
@@ -101,12 +119,19 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
 
     private void setLimit(ViewHolder holder, PartnerControlActivity.AppLimitInfo app, int minutes) {
         app.dailyLimitMinutes = minutes;
-        holder.limitEditText.setText(String.valueOf(minutes));
+        showLimit(holder, minutes);
         if (limitChangeListener != null) {
             limitChangeListener.onLimitChanged(app, minutes);
         }
     }
 
+    // Button edits already reported the change; the watcher must not report it again
+    private void showLimit(ViewHolder holder, int minutes) {
+        holder.limitEditText.removeTextChangedListener(holder.limitWatcher);
+        holder.limitEditText.setText(String.valueOf(minutes));
+        holder.limitEditText.addTextChangedListener(holder.limitWatcher);
+    }
+
     @Override
     public int getItemCount() {
         return apps.size();
@@ -121,6 +146,8 @@ public class AppLimitAdapter extends RecyclerView.Adapter<AppLimitAdapter.ViewHo
         Button preset15Button;
         Button preset30Button;
         Button preset60Button;
+        TextWatcher limitWatcher;
+        PartnerControlActivity.AppLimitInfo boundApp;
 
         ViewHolder(View itemView) {
             super(itemView);
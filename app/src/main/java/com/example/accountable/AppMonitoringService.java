@@ -7,16 +7,24 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Toast;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -27,13 +35,21 @@ public class AppMonitoringService extends AccessibilityService {
     private static final String TAG = "AppMonitoringService";
     private static final String PREFS_NAME = "app_monitoring";
     private static final long CHECK_INTERVAL = 5000L;
+    // Remaining-time thresholds that each produce a single warning per foreground session
+    private static final long[] WARNING_THRESHOLDS = {5 * 60 * 1000L, 60 * 1000L, 10 * 1000L};
+    // Start preparing the block path once the budget is expected to run out within this window
+    private static final long PREWARM_THRESHOLD = 30 * 1000L;
+    private static final double BURN_RATE_SMOOTHING = 0.3;
+    private static final long DOMAIN_BLOCK_DEBOUNCE = 1500L;
+    private static final int EVENT_RING_CAPACITY = 256;
 
     private FirebaseFirestore db;
     private FirebaseAuth mAuth;
     private String currentUserId;
 
     private final Map<String, Long> appStartTimes = new ConcurrentHashMap<>();
-    private final Map<String, Long> totalUsageToday = new ConcurrentHashMap<>();
+    // Today's usage per app, merged across all of the user's devices
+    private SharedUsageCounter usageCounter;
     private final Map<String, Long> appLimits = new ConcurrentHashMap<>();
     private final Map<String, Long> lastBlockTime = new ConcurrentHashMap<>();
     private Map<String, Long> remainingWallet = new ConcurrentHashMap<>();
@@ -42,6 +58,39 @@ public class AppMonitoringService extends AccessibilityService {
 
     private final Set<String> cachedBlockedApps = ConcurrentHashMap.newKeySet();
     private final Set<String> userSelectedApps = ConcurrentHashMap.newKeySet();
+    private final Map<String, String> appNameCache = new ConcurrentHashMap<>();
+
+    // Partner info kept current by the user document listener
+    private volatile String mainPartnerId;
+    private volatile boolean partnerInfoLoaded = false;
+    private boolean unlockSecretRequested = false;
+
+    // Partner-blocked websites, compiled off the main thread whenever the list changes
+    private volatile DomainMatcher domainMatcher = DomainMatcher.empty();
+    private List<String> blockedDomainsSource = new ArrayList<>();
+    private final ExecutorService matcherCompiler = Executors.newSingleThreadExecutor();
+    private long lastDomainBlockTime = 0L;
+
+    // Partner-blocked sections inside otherwise allowed apps (Shorts, Reels)
+    private final SectionMatcher sectionMatcher = new SectionMatcher();
+    private List<String> blockedSectionsSource = new ArrayList<>();
+    private long lastSectionBlockTime = 0L;
+
+    // Partner pre-authorized allowances, mirrored locally so the block screen can grant without a round trip
+    private Map<String, Object> autoGrantAllowancesSource;
+
+    // Launchers, keyboards, dialer and other system components, derived from PackageManager
+    private SystemAppClassifier systemAppClassifier;
+
+    // Liveness heartbeat partners use to spot a disabled or killed service
+    private TamperDetectionService tamperDetection;
+
+    // Coalesces block events into one partner notification per app and day
+    private NotificationDigest notificationDigest;
+
+    // Ongoing countdown for the restricted app in the foreground
+    private BudgetNotifier budgetNotifier;
+    private final Runnable budgetStatePublisher = this::publishBudgetState;
 
     private Handler handler = new Handler(Looper.getMainLooper());
     private Runnable usageChecker;
@@ -50,12 +99,52 @@ public class AppMonitoringService extends AccessibilityService {
     // Firestore listener for temporary access
     private com.google.firebase.firestore.ListenerRegistration temporaryAccessListener;
 
-    private String currentForegroundApp = "";
-    private long currentAppStartTime = 0L;
+    // Partner-set limits (package -> minutes) from limits/{uid}; null until the listener's first snapshot
+    private Map<String, Long> partnerLimitMinutes;
+    private final Map<String, List<Runnable>> pendingLimitChecks = new HashMap<>();
+    private com.google.firebase.firestore.ListenerRegistration limitsListener;
+
+    // Window events flow from the accessibility callback to the engine through this ring
+    private final AppEventRing eventRing = new AppEventRing(EVENT_RING_CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final Runnable eventDrainer = this::drainAppEvents;
+    private long reportedOverflowCount = 0L;
+
+    private volatile String currentForegroundApp = "";
+    private volatile long currentAppStartTime = 0L;
+    private long lastUsageAccountedTime = 0L;
     private boolean isBlocking = false;
 
+    // Time warnings scheduled as exact deadlines for the current foreground session
+    private final List<Runnable> pendingWarnings = new ArrayList<>();
+    private final Set<Long> firedWarnings = new HashSet<>();
+    private String warningsScheduledFor = "";
+    private long warningsExhaustionTime = 0L;
+    // Single block posted for the moment the foreground app's budget runs out
+    private Runnable blockDeadline;
+
+    // Moving estimate of time-to-exhaustion for the foreground app
+    private String estimatePackage = "";
+    private long lastRemainingSample = 0L;
+    private long lastSampleTime = 0L;
+    private double burnRate = 1.0;
+
+    // Block path prepared ahead of time so blocking is only a show call
+    private String preparedBlockPackage = "";
+    private Intent preparedBlockIntent;
+    private Map<String, Object> preparedNotification;
+    // Partner notification held until the user document listener reports the partner
+    private Runnable pendingPartnerNotification;
+
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
+        if (event.getPackageName() != null && !domainMatcher.isEmpty()) {
+            checkBrowserUrl(event);
+        }
+        if (event.getPackageName() != null && !sectionMatcher.isEmpty()) {
+            checkAppSection(event);
+        }
+
         if (event.getEventType() == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
                 || event.getEventType() == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
                 || event.getEventType() == AccessibilityEvent.TYPE_WINDOWS_CHANGED) {
@@ -67,32 +156,149 @@ public class AppMonitoringService extends AccessibilityService {
                 if (isSystem || isOurApp) {
                     return;
                 }
-                handleAppSwitch(packageName);
+                // Hand the switch to the engine; the callback itself only records it
+                if (eventRing.publish(packageName, event.getEventType(), SystemClock.elapsedRealtime())
+                        && drainScheduled.compareAndSet(false, true)) {
+                    handler.post(eventDrainer);
+                }
             }
         }
     }
 
-    private boolean isSystemApp(String packageName) {
-        return packageName.startsWith("android.")
-                || packageName.equals("com.android.systemui")
-                || packageName.equals("com.android.launcher")
-                || packageName.equals("com.android.launcher3")
-                || packageName.equals("com.android.settings")
-                || packageName.equals("com.google.android.googlequicksearchbox")
-                || packageName.equals("com.android.inputmethod.latin")
-                || packageName.equals("com.android.phone")
-                || packageName.equals("com.android.dialer");
-    }
-
-    private void handleAppSwitch(String newPackageName) {
+    private void drainAppEvents() {
+        drainScheduled.set(false);
+        eventRing.drain(this::onAppEvent);
+
+        long overflow = eventRing.getOverflowCount();
+        if (overflow != reportedOverflowCount) {
+            Log.w(TAG, "App event ring overflowed, " + overflow + " events dropped in total");
+            reportedOverflowCount = overflow;
+        }
+    }
+
+    private void onAppEvent(String packageName, int eventType, long timestamp) {
+        // Event timestamps are monotonic; usage accounting works in wall-clock time
+        long eventTime = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - timestamp);
+        handleAppSwitch(packageName, eventTime);
+    }
+
+    private void checkBrowserUrl(AccessibilityEvent event) {
+        String packageName = event.getPackageName().toString();
+        if (!BrowserUrlReader.isSupportedBrowser(packageName)) {
+            return;
+        }
+
+        // Only navigation and address-bar text changes are inspected - scrolling never reaches the tree walk
+        int eventType = event.getEventType();
+        String url = null;
+        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            AccessibilityNodeInfo root = getRootInActiveWindow();
+            if (root == null) {
+                return;
+            }
+            url = BrowserUrlReader.findUrl(root, packageName);
+            root.recycle();
+        } else if (eventType == AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED
+                || (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
+                && (event.getContentChangeTypes() & AccessibilityEvent.CONTENT_CHANGE_TYPE_TEXT) != 0)) {
+            AccessibilityNodeInfo source = event.getSource();
+            if (source == null) {
+                return;
+            }
+            if (BrowserUrlReader.isUrlBar(source, packageName)) {
+                url = BrowserUrlReader.readUrl(source);
+            }
+            source.recycle();
+        }
+
+        if (url == null) {
+            return;
+        }
+        String blockedDomain = domainMatcher.match(url);
+        if (blockedDomain != null) {
+            blockDomain(blockedDomain);
+        }
+    }
+
+    private void blockDomain(String domain) {
+        long now = System.currentTimeMillis();
+        if (now - lastDomainBlockTime < DOMAIN_BLOCK_DEBOUNCE) {
+            return;
+        }
+        lastDomainBlockTime = now;
+        Log.d(TAG, "BLOCKING website " + domain);
+        performGlobalAction(GLOBAL_ACTION_BACK);
+        Toast.makeText(this, domain + " is blocked by your accountability partner", Toast.LENGTH_SHORT).show();
+    }
+
+    private void checkAppSection(AccessibilityEvent event) {
+        SectionMatcher.Section section = sectionMatcher.match(event);
+        if (section == null) {
+            return;
+        }
+        // Reset even when debounced, so nothing about this match outlives the user leaving the section
+        sectionMatcher.reset(event.getWindowId());
         long now = System.currentTimeMillis();
-        Log.d(TAG, "App switch: " + currentForegroundApp + " -> " + newPackageName);
+        if (now - lastSectionBlockTime < DOMAIN_BLOCK_DEBOUNCE) {
+            return;
+        }
+        lastSectionBlockTime = now;
+        Log.d(TAG, "BLOCKING section " + section.label);
+        performGlobalAction(GLOBAL_ACTION_BACK);
+        Toast.makeText(this, section.label + " is blocked by your accountability partner", Toast.LENGTH_SHORT).show();
+    }
+
+    private void updateBlockedSections(List<String> sections) {
+        List<String> source = sections != null ? new ArrayList<>(sections) : new ArrayList<>();
+        if (source.equals(blockedSectionsSource)) {
+            return;
+        }
+        blockedSectionsSource = source;
+        sectionMatcher.setBlockedSections(source);
+    }
+
+    private void updateBlockedDomains(List<String> domains) {
+        List<String> source = domains != null ? new ArrayList<>(domains) : new ArrayList<>();
+        if (source.equals(blockedDomainsSource)) {
+            return;
+        }
+        blockedDomainsSource = source;
+        matcherCompiler.execute(() -> {
+            domainMatcher = DomainMatcher.compile(source);
+            Log.d(TAG, "Compiled " + domainMatcher.size() + " blocked domains");
+        });
+    }
+
+    private void updateAutoGrantAllowances(Map<String, Object> allowances) {
+        Map<String, Object> source = allowances != null ? new java.util.HashMap<>(allowances) : new java.util.HashMap<>();
+        if (source.equals(autoGrantAllowancesSource)) {
+            return;
+        }
+        autoGrantAllowancesSource = source;
+        AutoGrantAllowances.update(this, source);
+    }
+
+    private boolean isSystemApp(String packageName) {
+        // An app the user chose to restrict is always tracked, even if it ships with the system
+        return systemAppClassifier != null
+                && systemAppClassifier.isIgnored(packageName)
+                && !userSelectedApps.contains(packageName);
+    }
+
+    private void handleAppSwitch(String newPackageName, long now) {
+        boolean isNewSession = !newPackageName.equals(currentForegroundApp);
+        if (isNewSession) {
+            Log.d(TAG, "App switch: " + currentForegroundApp + " -> " + newPackageName);
+        }
 
         // Handle previous app usage tracking (wallet deduction handled in updateCurrentAppUsage)
-        if (!currentForegroundApp.isEmpty() && currentAppStartTime > 0) {
-            long sessionDuration = now - currentAppStartTime;
-            // Only update regular usage tracking - wallet deduction is handled by updateCurrentAppUsage() timer
-            updateAppUsage(currentForegroundApp, sessionDuration);
+        // Only update regular usage tracking - wallet deduction is handled by updateCurrentAppUsage() timer
+        accountForegroundUsage(now);
+
+        if (isNewSession) {
+            cancelTimeWarnings();
+            cancelBlockDeadline();
+            clearPreparedBlock();
         }
 
         // Check if we're trying to open a blocked app - THIS IS THE KEY CHECK
@@ -105,11 +311,75 @@ public class AppMonitoringService extends AccessibilityService {
             return;
         }
 
+        // Content events from the same app keep the session going - the periodic checker covers it
+        if (!isNewSession) {
+            return;
+        }
+
         // Start tracking new app
         Log.d(TAG, "ALLOWING " + newPackageName);
         currentForegroundApp = newPackageName;
         currentAppStartTime = now;
+        lastUsageAccountedTime = now;
         checkAppRestrictions(newPackageName);
+        updateBudgetNotification();
+    }
+
+    // Keeps the countdown notification in step with the foreground app; only real changes re-post it
+    private void updateBudgetNotification() {
+        publishBudgetState();
+        if (budgetNotifier == null) {
+            return;
+        }
+        String packageName = currentForegroundApp;
+        if (packageName.isEmpty() || !userSelectedApps.contains(packageName)) {
+            budgetNotifier.hide();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (hasRemainingTime(packageName)) {
+            budgetNotifier.show(packageName, getAppName(packageName),
+                    now + remainingWallet.getOrDefault(packageName, 0L), true);
+        } else if (appLimits.containsKey(packageName)
+                && appLimits.getOrDefault(packageName, 0L) > getUsageToday(packageName)) {
+            budgetNotifier.show(packageName, getAppName(packageName),
+                    now + appLimits.getOrDefault(packageName, 0L) - getUsageToday(packageName), false);
+        } else {
+            budgetNotifier.hide();
+        }
+    }
+
+    // Publishes remaining time for the widget and tile; they are only pushed when a displayed minute
+    // changes, and the next push for the foreground app is scheduled on its exact minute boundary
+    private void publishBudgetState() {
+        List<BudgetState.Entry> entries = new ArrayList<>();
+        long nextBoundary = 0L;
+        for (String packageName : userSelectedApps) {
+            long remaining;
+            boolean wallet = hasRemainingTime(packageName);
+            if (wallet) {
+                remaining = remainingWallet.getOrDefault(packageName, 0L);
+            } else if (appLimits.containsKey(packageName)) {
+                remaining = Math.max(0, appLimits.getOrDefault(packageName, 0L) - getUsageToday(packageName));
+            } else {
+                continue;
+            }
+            boolean foreground = packageName.equals(currentForegroundApp);
+            entries.add(new BudgetState.Entry(packageName, getAppName(packageName), remaining, wallet, foreground));
+            if (foreground && !wallet && remaining > 0) {
+                nextBoundary = remaining % 60000 == 0 ? 60000 : remaining % 60000;
+            }
+        }
+
+        if (BudgetState.publish(entries)) {
+            BudgetWidgetProvider.updateAll(this);
+            BudgetTileService.requestUpdate(this);
+        }
+        handler.removeCallbacks(budgetStatePublisher);
+        if (nextBoundary > 0) {
+            handler.postDelayed(budgetStatePublisher, nextBoundary + 50);
+        }
     }
 
     private boolean isAppCurrentlyBlocked(String packageName) {
@@ -261,22 +531,45 @@ public class AppMonitoringService extends AccessibilityService {
     }
 
     private boolean isAppOverLimit(String packageName) {
-        long dailyUsage = totalUsageToday.getOrDefault(packageName, 0L);
+        long dailyUsage = usageCounter.get(packageName);
         long limit = appLimits.getOrDefault(packageName, 0L);
         return dailyUsage >= limit;
     }
 
     private void blockAppImmediately(String packageName) {
         isBlocking = true;
+        if (budgetNotifier != null) {
+            budgetNotifier.hide();
+        }
         showBlockScreenImmediately(packageName);
         scheduleBlockEnforcement(packageName);
         isBlocking = false;
     }
 
     private void updateAppUsage(String packageName, long sessionDuration) {
-        long current = totalUsageToday.getOrDefault(packageName, 0L);
-        totalUsageToday.put(packageName, current + sessionDuration);
-        Log.d(TAG, packageName + " used for " + (sessionDuration / 1000) + " seconds. Total today: " + ((current + sessionDuration) / 60000) + " minutes");
+        usageCounter.add(packageName, sessionDuration);
+        Log.d(TAG, packageName + " used for " + (sessionDuration / 1000) + " seconds. Total today: " + (usageCounter.get(packageName) / 60000) + " minutes");
+    }
+
+    // Charges the foreground app only for time not yet accounted, so usage grows linearly
+    // and the remaining budget can be turned into exact deadlines
+    private void accountForegroundUsage(long now) {
+        if (currentForegroundApp.isEmpty() || lastUsageAccountedTime == 0) {
+            return;
+        }
+        long elapsed = now - lastUsageAccountedTime;
+        lastUsageAccountedTime = now;
+        if (elapsed > 0) {
+            updateAppUsage(currentForegroundApp, elapsed);
+        }
+    }
+
+    private long getUsageToday(String packageName) {
+        long usage = usageCounter.get(packageName);
+        if (packageName.equals(currentForegroundApp) && lastUsageAccountedTime > 0) {
+            usage += Math.max(0, System.currentTimeMillis() - lastUsageAccountedTime);
+        }
+        return usage;
     }
 
     private void checkAppRestrictions(String packageName) {
@@ -291,20 +584,13 @@ public class AppMonitoringService extends AccessibilityService {
             return;
         }
 
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        List<String> selectedApps = (List<String>) documentSnapshot.get("selectedApps");
-                        if (selectedApps != null && selectedApps.contains(packageName)) {
-                            Log.d(TAG, "🔍 " + packageName + " is restricted - checking time limits");
-                            checkTimeLimit(packageName);
-                        } else {
-                            Log.d(TAG, "✅ " + packageName + " not in restricted apps - allowing");
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> Log.e(TAG, "❌ Failed to check app restrictions for " + packageName, e));
+        // selectedApps is kept current by the user document listener, which rechecks the foreground app on load
+        if (userSelectedApps.contains(packageName)) {
+            Log.d(TAG, "🔍 " + packageName + " is restricted - checking time limits");
+            checkTimeLimit(packageName);
+        } else {
+            Log.d(TAG, "✅ " + packageName + " not in restricted apps - allowing");
+        }
     }
 
     private void checkTimeLimit(String packageName) {
@@ -323,7 +609,7 @@ public class AppMonitoringService extends AccessibilityService {
             return; // Skip all regular limit checks if wallet time exists
         }
 
-        long dailyUsage = totalUsageToday.getOrDefault(packageName, 0L);
+        long dailyUsage = getUsageToday(packageName);
         long limit = appLimits.getOrDefault(packageName, 0L);
 
         Log.d(TAG, "Checking regular limits for " + packageName + ": usage=" + (dailyUsage / 60000) + "min, limit=" + (limit / 60000) + "min");
@@ -339,40 +625,182 @@ public class AppMonitoringService extends AccessibilityService {
         } else {
             long remaining = limit - dailyUsage;
             Log.d(TAG, packageName + " within limits - " + (remaining / 60000) + "min remaining");
-            if (remaining <= 5 * 60 * 1000) {
-                showTimeWarning(packageName, remaining);
+            scheduleTimeWarnings(packageName, remaining);
+            scheduleBlockDeadline(packageName, remaining);
+            updateBudgetNotification();
+        }
+    }
+
+    private void scheduleBlockDeadline(String packageName, long remaining) {
+        if (!packageName.equals(currentForegroundApp)) {
+            return;
+        }
+        cancelBlockDeadline();
+        blockDeadline = () -> {
+            blockDeadline = null;
+            // Re-evaluated rather than blocked outright: the limit may have been raised or a wallet granted since
+            if (packageName.equals(currentForegroundApp)) {
+                checkTimeLimitWithLoadedData(packageName);
             }
+        };
+        handler.postAtTime(blockDeadline, SystemClock.uptimeMillis() + remaining);
+    }
+
+    private void cancelBlockDeadline() {
+        if (blockDeadline != null) {
+            handler.removeCallbacks(blockDeadline);
+            blockDeadline = null;
+        }
+    }
+
+    // The foreground app's budget changed under it (new limits, new selection, new day, usage on another device);
+    // re-plan its deadline
+    private void recheckForegroundApp() {
+        String packageName = currentForegroundApp;
+        if (packageName.isEmpty() || cachedBlockedApps.contains(packageName)) {
+            return;
         }
+        checkAppRestrictions(packageName);
+    }
+
+    private void scheduleTimeWarnings(String packageName, long remaining) {
+        if (!packageName.equals(currentForegroundApp)) {
+            return;
+        }
+
+        long exhaustionTime = System.currentTimeMillis() + remaining;
+        // Same session and same deadline - the warnings already posted are still exact
+        if (packageName.equals(warningsScheduledFor)
+                && Math.abs(exhaustionTime - warningsExhaustionTime) < CHECK_INTERVAL) {
+            return;
+        }
+
+        clearPendingWarnings();
+        warningsScheduledFor = packageName;
+        warningsExhaustionTime = exhaustionTime;
+
+        boolean alreadyCrossed = false;
+        for (long threshold : WARNING_THRESHOLDS) {
+            if (firedWarnings.contains(threshold)) {
+                continue;
+            }
+            if (remaining > threshold) {
+                Runnable warning = () -> fireTimeWarning(packageName, threshold);
+                pendingWarnings.add(warning);
+                handler.postDelayed(warning, remaining - threshold);
+            } else {
+                firedWarnings.add(threshold);
+                alreadyCrossed = true;
+            }
+        }
+
+        // Session started below one or more thresholds - warn once with the actual remaining time
+        if (alreadyCrossed) {
+            showTimeWarning(packageName, remaining);
+        }
+    }
+
+    private void fireTimeWarning(String packageName, long threshold) {
+        if (!packageName.equals(currentForegroundApp) || hasRemainingTime(packageName)) {
+            return;
+        }
+        if (firedWarnings.add(threshold)) {
+            showTimeWarning(packageName, threshold);
+        }
+    }
+
+    private void clearPendingWarnings() {
+        for (Runnable warning : pendingWarnings) {
+            handler.removeCallbacks(warning);
+        }
+        pendingWarnings.clear();
+    }
+
+    private void cancelTimeWarnings() {
+        clearPendingWarnings();
+        firedWarnings.clear();
+        warningsScheduledFor = "";
+        warningsExhaustionTime = 0L;
     }
 
     private void loadAppLimit(String packageName, Runnable onComplete) {
         if (currentUserId == null) {
             return;
         }
-        db.collection("appLimits")
-                .whereEqualTo("partnerId", currentUserId)
-                .whereEqualTo("packageName", packageName)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (!queryDocumentSnapshots.isEmpty()) {
-                        Long limitMinutes = queryDocumentSnapshots.getDocuments().get(0).getLong("dailyLimitMinutes");
-                        long limitMillis = (limitMinutes != null ? limitMinutes : 0) * 60 * 1000L;
-                        appLimits.put(packageName, limitMillis);
-                        Log.d(TAG, "Loaded limit for " + packageName + ": " + (limitMinutes != null ? limitMinutes : 0) + " minutes");
-                    } else {
-                        long defaultLimit = 30 * 60 * 1000L;
-                        appLimits.put(packageName, defaultLimit);
-                        Log.d(TAG, "No specific limit for " + packageName + ", using default: 30 minutes");
+        if (partnerLimitMinutes == null) {
+            // Resolved as soon as the limits document's first snapshot arrives
+            List<Runnable> waiting = pendingLimitChecks.get(packageName);
+            if (waiting == null) {
+                waiting = new ArrayList<>();
+                pendingLimitChecks.put(packageName, waiting);
+            }
+            if (onComplete != null) {
+                waiting.add(onComplete);
+            }
+            return;
+        }
+        resolveAppLimit(packageName);
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+
+    private void resolveAppLimit(String packageName) {
+        Long limitMinutes = partnerLimitMinutes.get(packageName);
+        if (limitMinutes != null) {
+            appLimits.put(packageName, limitMinutes * 60 * 1000L);
+            Log.d(TAG, "Loaded limit for " + packageName + ": " + limitMinutes + " minutes");
+        } else {
+            long defaultLimit = 30 * 60 * 1000L;
+            appLimits.put(packageName, defaultLimit);
+            Log.d(TAG, "No specific limit for " + packageName + ", using default: 30 minutes");
+        }
+    }
+
+    private void setupLimitsListener() {
+        if (currentUserId == null || db == null) {
+            return;
+        }
+        // One document holds every limit the partner set; edits arrive here instead of being polled per package
+        limitsListener = LimitsStore.documentFor(db, currentUserId)
+                .addSnapshotListener((documentSnapshot, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Limits listener failed", e);
+                        // Without limits, apps waiting on them stay blocked
+                        for (Map.Entry<String, List<Runnable>> entry : pendingLimitChecks.entrySet()) {
+                            appLimits.put(entry.getKey(), 0L);
+                            for (Runnable check : entry.getValue()) {
+                                check.run();
+                            }
+                        }
+                        pendingLimitChecks.clear();
+                        return;
+                    }
+                    if (documentSnapshot == null) {
+                        return;
+                    }
+                    partnerLimitMinutes = LimitsStore.read(documentSnapshot);
+
+                    Set<String> packages = new HashSet<>(appLimits.keySet());
+                    packages.addAll(pendingLimitChecks.keySet());
+                    for (String packageName : packages) {
+                        resolveAppLimit(packageName);
                     }
-                    if (onComplete != null) {
-                        onComplete.run();
+                    boolean foregroundWaiting = pendingLimitChecks.containsKey(currentForegroundApp);
+                    List<Runnable> waiting = new ArrayList<>();
+                    for (List<Runnable> checks : pendingLimitChecks.values()) {
+                        waiting.addAll(checks);
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to load app limit for " + packageName, e);
-                    appLimits.put(packageName, 0L);
-                    if (onComplete != null) {
-                        onComplete.run();
+                    pendingLimitChecks.clear();
+                    for (Runnable check : waiting) {
+                        check.run();
+                    }
+                    if (!foregroundWaiting) {
+                        recheckForegroundApp();
+                    }
+
+                    if (!documentSnapshot.getMetadata().isFromCache()) {
+                        LimitsStore.migrateIfNeeded(db, currentUserId, documentSnapshot);
                     }
                 });
     }
@@ -380,13 +808,13 @@ public class AppMonitoringService extends AccessibilityService {
     private void blockApp(String packageName, long usedTime, long limit) {
         lastBlockTime.put(packageName, System.currentTimeMillis());
         cachedBlockedApps.add(packageName);
+        if (budgetNotifier != null) {
+            budgetNotifier.hide();
+        }
 
-        Intent homeIntent = new Intent(Intent.ACTION_MAIN);
-        homeIntent.addCategory(Intent.CATEGORY_HOME);
-        homeIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
-        startActivity(homeIntent);
-
-        showBlockedMessage(packageName, usedTime, limit);
+        // The block screen covers the app straight from the prepared intent; the partner is told from the
+        // prepared notification
+        showBlockScreenImmediately(packageName);
         scheduleBlockEnforcement(packageName);
         notifyPartner(packageName, usedTime, limit);
     }
@@ -425,27 +853,31 @@ public class AppMonitoringService extends AccessibilityService {
     }
 
     private void showBlockScreenImmediately(String packageName) {
-        String appName = getAppName(packageName);
-        long usedTime = totalUsageToday.getOrDefault(packageName, 0L);
-        long limit = appLimits.getOrDefault(packageName, 0L);
+        // A copy, so the extras below never leak into a later block
+        Intent blockIntent = packageName.equals(preparedBlockPackage) && preparedBlockIntent != null
+                ? new Intent(preparedBlockIntent)
+                : buildBlockIntent(packageName, getAppName(packageName));
+        blockIntent.putExtra("usedTime", usageCounter.get(packageName));
+        blockIntent.putExtra("timeLimit", appLimits.getOrDefault(packageName, 0L));
+        startActivity(blockIntent);
+    }
 
+    private Intent buildBlockIntent(String packageName, String appName) {
         Intent blockIntent = new Intent(this, AppBlockedActivity.class);
         blockIntent.putExtra("packageName", packageName);
         blockIntent.putExtra("appName", appName);
-        blockIntent.putExtra("usedTime", usedTime);
-        blockIntent.putExtra("timeLimit", limit);
         blockIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK
                 | Intent.FLAG_ACTIVITY_CLEAR_TOP
                 | Intent.FLAG_ACTIVITY_EXCLUDE_FROM_RECENTS
                 | Intent.FLAG_ACTIVITY_BROUGHT_TO_FRONT
                 | Intent.FLAG_ACTIVITY_NO_HISTORY
                 | Intent.FLAG_ACTIVITY_SINGLE_TOP);
-        startActivity(blockIntent);
+        return blockIntent;
     }
 
     private void showPersistentBlockMessage(String packageName) {
         String appName = getAppName(packageName);
-        long usedTime = totalUsageToday.getOrDefault(packageName, 0L);
+        long usedTime = usageCounter.get(packageName);
         long limit = appLimits.getOrDefault(packageName, 0L);
 
         Intent blockIntent = new Intent(this, AppBlockedActivity.class);
@@ -468,65 +900,185 @@ public class AppMonitoringService extends AccessibilityService {
         Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
 
-    private void showBlockedMessage(String packageName, long usedTime, long limit) {
-        Toast.makeText(this, "Access blocked - Partner notified", Toast.LENGTH_LONG).show();
-    }
-
     private void notifyPartner(String packageName, long usedTime, long limit) {
         if (currentUserId == null) {
             return;
         }
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    String partnerId = documentSnapshot.getString("mainPartnerId");
-                    if (partnerId != null) {
-                        sendPartnerNotification(partnerId, packageName, usedTime, limit);
-                    }
-                })
-                .addOnFailureListener(e -> Log.e(TAG, "Failed to get partner info", e));
+        // Partner known from the user document listener - no read on the block path
+        if (partnerInfoLoaded) {
+            if (mainPartnerId != null) {
+                sendPartnerNotification(mainPartnerId, packageName, usedTime, limit);
+            }
+            return;
+        }
+        pendingPartnerNotification = () -> {
+            if (mainPartnerId != null) {
+                sendPartnerNotification(mainPartnerId, packageName, usedTime, limit);
+            }
+        };
     }
 
     private void sendPartnerNotification(String partnerId, String packageName, long usedTime, long limit) {
+        Map<String, Object> notification;
+        if (packageName.equals(preparedBlockPackage) && preparedNotification != null
+                && partnerId.equals(preparedNotification.get("partnerId"))) {
+            notification = new java.util.HashMap<>(preparedNotification);
+            // Used up; a later block in this session builds its own
+            preparedNotification = null;
+        } else {
+            notification = buildPartnerNotification(partnerId, packageName, getAppName(packageName));
+        }
+        notification.put("usedTime", usedTime);
+        notification.put("timeLimit", limit);
+
+        // Retries of the same app are folded into one digest per day instead of one alert each
+        notificationDigest.record(packageName, notification);
+    }
+
+    private Map<String, Object> buildPartnerNotification(String partnerId, String packageName, String appName) {
         Map<String, Object> notification = new java.util.HashMap<>();
         notification.put("userId", currentUserId);
         notification.put("partnerId", partnerId);
         notification.put("appPackage", packageName);
-        notification.put("appName", getAppName(packageName));
-        notification.put("usedTime", usedTime);
-        notification.put("timeLimit", limit);
-        notification.put("timestamp", System.currentTimeMillis());
+        notification.put("appName", appName);
         notification.put("type", "app_limit_exceeded");
         notification.put("status", "pending");
-
-        db.collection("notifications")
-                .add(notification)
-                .addOnSuccessListener(documentReference -> Log.d(TAG, "Partner notification sent: " + documentReference.getId()))
-                .addOnFailureListener(e -> Log.e(TAG, "Failed to send partner notification", e));
+        return notification;
     }
 
     private String getAppName(String packageName) {
+        String cached = appNameCache.get(packageName);
+        if (cached != null) {
+            return cached;
+        }
         try {
-            return getPackageManager().getApplicationLabel(getPackageManager().getApplicationInfo(packageName, 0)).toString();
+            String label = getPackageManager().getApplicationLabel(getPackageManager().getApplicationInfo(packageName, 0)).toString();
+            appNameCache.put(packageName, label);
+            return label;
         } catch (Exception e) {
             return packageName;
         }
     }
 
+    private void updateExhaustionEstimate(String packageName, long now) {
+        long remaining;
+        if (remainingWallet.containsKey(packageName)) {
+            remaining = remainingWallet.getOrDefault(packageName, 0L);
+        } else if (userSelectedApps.contains(packageName) && appLimits.containsKey(packageName)) {
+            remaining = appLimits.getOrDefault(packageName, 0L) - getUsageToday(packageName);
+        } else {
+            estimatePackage = "";
+            return;
+        }
+
+        if (!packageName.equals(estimatePackage) || remaining > lastRemainingSample) {
+            // New app or budget was topped up - restart the estimate at real-time burn
+            estimatePackage = packageName;
+            burnRate = 1.0;
+        } else if (now > lastSampleTime) {
+            double observed = (double) (lastRemainingSample - remaining) / (now - lastSampleTime);
+            burnRate = BURN_RATE_SMOOTHING * observed + (1 - BURN_RATE_SMOOTHING) * burnRate;
+        }
+        lastRemainingSample = remaining;
+        lastSampleTime = now;
+
+        if (burnRate > 0 && remaining / burnRate <= PREWARM_THRESHOLD) {
+            prewarmBlockPath(packageName);
+        }
+    }
+
+    private void prewarmBlockPath(String packageName) {
+        if (packageName.equals(preparedBlockPackage)) {
+            return;
+        }
+        preparedBlockPackage = packageName;
+
+        String appName = getAppName(packageName);
+        preparedBlockIntent = buildBlockIntent(packageName, appName);
+        // Without the partner yet, updatePartnerInfo() fills the notification in when the listener reports it
+        preparedNotification = mainPartnerId != null
+                ? buildPartnerNotification(mainPartnerId, packageName, appName)
+                : null;
+
+        Log.d(TAG, "Block path pre-warmed for " + packageName);
+    }
+
+    private void clearPreparedBlock() {
+        preparedBlockPackage = "";
+        preparedBlockIntent = null;
+        preparedNotification = null;
+    }
+
+    private void updatePartnerInfo(String partnerId) {
+        boolean partnerChanged = !partnerInfoLoaded || !Objects.equals(mainPartnerId, partnerId);
+        mainPartnerId = partnerId;
+        partnerInfoLoaded = true;
+        if (partnerChanged && !preparedBlockPackage.isEmpty()) {
+            preparedNotification = partnerId != null
+                    ? buildPartnerNotification(partnerId, preparedBlockPackage, getAppName(preparedBlockPackage))
+                    : null;
+        }
+        if (pendingPartnerNotification != null) {
+            Runnable pending = pendingPartnerNotification;
+            pendingPartnerNotification = null;
+            pending.run();
+        }
+        // Unlock codes must verify offline, so make sure the shared secret is on this device
+        if (partnerId != null && !unlockSecretRequested && UnlockCodes.getSecret(this, currentUserId) == null) {
+            unlockSecretRequested = true;
+            // Retried on the next user document update if this attempt fails
+            UnlockCodes.syncSecret(this, db, currentUserId, partnerId)
+                    .addOnFailureListener(e -> unlockSecretRequested = false);
+        }
+    }
+
     @Override
     public void onInterrupt() {
         Log.d(TAG, "Service interrupted");
     }
 
+    @Override
+    public boolean onUnbind(Intent intent) {
+        // The accessibility setting was turned off - tell the partner before the process goes away
+        if (tamperDetection != null) {
+            tamperDetection.recordState(TamperDetectionService.STATE_DISABLED);
+        }
+        return super.onUnbind(intent);
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
+        if (tamperDetection != null) {
+            tamperDetection.recordState(TamperDetectionService.STATE_STOPPED);
+            tamperDetection.stop();
+        }
         if (temporaryAccessListener != null) {
             temporaryAccessListener.remove();
         }
+        if (limitsListener != null) {
+            limitsListener.remove();
+        }
         if (handler != null) {
             handler.removeCallbacks(usageChecker);
             handler.removeCallbacks(blockEnforcer);
+            handler.removeCallbacks(eventDrainer);
+            handler.removeCallbacks(budgetStatePublisher);
+            clearPendingWarnings();
+            cancelBlockDeadline();
+        }
+        matcherCompiler.shutdownNow();
+        if (usageCounter != null) {
+            usageCounter.stop();
+        }
+        if (notificationDigest != null) {
+            notificationDigest.flush();
+        }
+        if (budgetNotifier != null) {
+            budgetNotifier.hide();
+        }
+        if (systemAppClassifier != null) {
+            systemAppClassifier.stop();
         }
         Log.d(TAG, "AppMonitoringService destroyed");
     }
@@ -544,13 +1096,28 @@ public class AppMonitoringService extends AccessibilityService {
             Log.d(TAG, "❌ NO USER AUTHENTICATED - Service will not block apps");
         }
 
+        usageCounter = new SharedUsageCounter(this, db, currentUserId, PREFS_NAME);
+        // Usage on the user's other devices eats into the same budget, so the foreground deadline moves with it
+        usageCounter.setTotalsListener(packageName -> {
+            if (packageName.equals(currentForegroundApp)) {
+                recheckForegroundApp();
+            }
+        });
+
+        budgetNotifier = new BudgetNotifier(this);
+
+        systemAppClassifier = new SystemAppClassifier(this);
+        systemAppClassifier.start();
+
         AccessibilityServiceInfo info = new AccessibilityServiceInfo();
         info.eventTypes = AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED
                 | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED
-                | AccessibilityEvent.TYPE_WINDOWS_CHANGED;
+                | AccessibilityEvent.TYPE_WINDOWS_CHANGED
+                | AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED;
         info.feedbackType = AccessibilityServiceInfo.FEEDBACK_GENERIC;
         info.flags = AccessibilityServiceInfo.FLAG_INCLUDE_NOT_IMPORTANT_VIEWS
-                | AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS;
+                | AccessibilityServiceInfo.FLAG_RETRIEVE_INTERACTIVE_WINDOWS
+                | AccessibilityServiceInfo.FLAG_REPORT_VIEW_IDS;
         setServiceInfo(info);
 
         Log.d(TAG, "Accessibility service configured");
@@ -559,14 +1126,25 @@ public class AppMonitoringService extends AccessibilityService {
 
     private void startUsageMonitoring() {
         loadUserRestrictedApps();
+        setupLimitsListener();
         setupTemporaryAccessListener();
 
+        if (currentUserId != null) {
+            tamperDetection = new TamperDetectionService(this, db, currentUserId);
+            tamperDetection.start();
+            notificationDigest = new NotificationDigest(db, currentUserId);
+        }
+
         usageChecker = new Runnable() {
             @Override
             public void run() {
                 checkDailyReset();
                 updateCurrentAppUsage();
-                refreshAppLimits();
+                updateBudgetNotification();
+                usageCounter.flush(false);
+                if (tamperDetection != null) {
+                    tamperDetection.onEngineTick();
+                }
                 handler.postDelayed(this, CHECK_INTERVAL);
             }
         };
@@ -581,14 +1159,14 @@ public class AppMonitoringService extends AccessibilityService {
         long now = System.currentTimeMillis();
         long sessionDuration = now - currentAppStartTime;
 
-        // Update total usage tracking
-        long currentUsage = totalUsageToday.getOrDefault(currentForegroundApp, 0L);
-        long newTotal = currentUsage + sessionDuration;
-        totalUsageToday.put(currentForegroundApp, newTotal);
+        // Update total usage tracking - only the time since the last accounting pass is added
         // CRITICAL FIX: Don't reset currentAppStartTime - this was causing wallet deduction to only count 5-second intervals
         // currentAppStartTime should only be reset when app switches, not during continuous usage tracking
+        accountForegroundUsage(now);
+        long newTotal = usageCounter.get(currentForegroundApp);
+        updateExhaustionEstimate(currentForegroundApp, now);
 
-        Log.d(TAG, currentForegroundApp + " session: +" + (sessionDuration / 1000) + "s, Total today: " + (newTotal / 60000) + "min");
+        Log.d(TAG, currentForegroundApp + " session: " + (sessionDuration / 1000) + "s, Total today: " + (newTotal / 60000) + "min");
 
         // Handle wallet deduction if active - ONLY for current foreground app
         if (remainingWallet.containsKey(currentForegroundApp)) {
@@ -629,10 +1207,8 @@ public class AppMonitoringService extends AccessibilityService {
                             .addOnFailureListener(e -> Log.e(TAG, "Failed to update remaining time", e));
                 }
             }
-        } else {
-            // No wallet active, check regular restrictions
-            checkAppRestrictions(currentForegroundApp);
         }
+        // Without a wallet, the deadline posted when the app came to the foreground does the blocking
     }
 
     private void loadUserRestrictedApps() {
@@ -646,6 +1222,10 @@ public class AppMonitoringService extends AccessibilityService {
                         return;
                     }
                     if (documentSnapshot != null && documentSnapshot.exists()) {
+                        updatePartnerInfo(documentSnapshot.getString("mainPartnerId"));
+                        updateBlockedDomains((List<String>) documentSnapshot.get("blockedDomains"));
+                        updateBlockedSections((List<String>) documentSnapshot.get("blockedSections"));
+                        updateAutoGrantAllowances((Map<String, Object>) documentSnapshot.get("autoGrantAllowances"));
                         List<String> selectedApps = (List<String>) documentSnapshot.get("selectedApps");
                         if (selectedApps != null) {
                             Log.d(TAG, "Updated restricted apps list: " + selectedApps.size() + " apps");
@@ -670,6 +1250,7 @@ public class AppMonitoringService extends AccessibilityService {
                             cachedBlockedApps.clear();
                             Log.d(TAG, "🗑️ Cleared all caches (no apps selected)");
                         }
+                        recheckForegroundApp();
                     }
                 });
     }
@@ -731,6 +1312,9 @@ public class AppMonitoringService extends AccessibilityService {
                                     if (currentForegroundApp.equals(packageName)) {
                                         handler.removeCallbacks(blockEnforcer);
                                     }
+                                    if (packageName.equals(preparedBlockPackage)) {
+                                        clearPreparedBlock();
+                                    }
 
                                     long finalRemaining = remainingWallet.getOrDefault(packageName, remaining);
                                     Log.d(TAG,
@@ -778,21 +1362,18 @@ public class AppMonitoringService extends AccessibilityService {
         Calendar calendar = Calendar.getInstance();
         String currentDate = String.format(Locale.US, "%04d-%02d-%02d",
                 calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+        // Starts the new day's shared counters (a no-op while the day is unchanged)
+        usageCounter.startDay(currentDate);
         if (!currentDate.equals(lastResetDate)) {
             Log.d(TAG, "Midnight reset: " + lastResetDate + " -> " + currentDate);
-            totalUsageToday.clear();
             lastBlockTime.clear();
             cachedBlockedApps.clear();
+            cancelTimeWarnings();
+            cancelBlockDeadline();
+            clearPreparedBlock();
             prefs.edit().putString("last_reset_date", currentDate).apply();
             Log.d(TAG, "Daily limits reset at midnight");
-        }
-    }
-
-    private void refreshAppLimits() {
-        if (currentUserId != null && !appLimits.isEmpty()) {
-            for (String packageName : appLimits.keySet()) {
-                loadAppLimit(packageName, null);
-            }
+            recheckForegroundApp();
         }
     }
 }
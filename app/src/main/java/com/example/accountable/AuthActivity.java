@@ -21,6 +21,7 @@ import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.auth.GoogleAuthProvider;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -191,8 +192,11 @@ public class AuthActivity extends AppCompatActivity {
         userProfile.put("mainPartnerId", null);
         userProfile.put("partners", new ArrayList<String>());
 
-        db.collection("users").document(user.getUid())
-                .set(userProfile)
+        // The profile and its email index entry are created together
+        WriteBatch batch = db.batch();
+        batch.set(db.collection("users").document(user.getUid()), userProfile);
+        EmailIndex.addTo(batch, db, user.getUid(), user.getEmail());
+        batch.commit()
                 .addOnSuccessListener(aVoid -> {
                     showProgress(false);
                     Toast.makeText(this, "Account created successfully!", Toast.LENGTH_SHORT).show();
@@ -0,0 +1,85 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.Map;
+
+// Partner pre-authorized allowances ("up to 10 min/day of YouTube without asking"), evaluated on the device.
+// The allowance minutes mirror users/{uid}.autoGrantAllowances (kept current by AppMonitoringService's
+// user document listener) and the minutes already used today are tracked locally, so a grant needs no
+// Firestore read and no partner round trip.
+public final class AutoGrantAllowances {
+
+    private static final String PREFS_NAME = "auto_grant_allowances";
+    private static final String KEY_DAY = "day";
+    private static final String ALLOWANCE_PREFIX = "allowance_";
+    private static final String USED_PREFIX = "used_";
+
+    private AutoGrantAllowances() {
+    }
+
+    // Replaces the cached allowances with the partner's current map (package -> minutes per day)
+    public static void update(Context context, Map<String, Object> allowances) {
+        SharedPreferences prefs = prefs(context);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(ALLOWANCE_PREFIX)) {
+                editor.remove(key);
+            }
+        }
+        if (allowances != null) {
+            for (Map.Entry<String, Object> entry : allowances.entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    editor.putLong(ALLOWANCE_PREFIX + entry.getKey(), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        editor.apply();
+    }
+
+    // Seconds still available today without asking the partner
+    public static long remainingSeconds(Context context, String packageName) {
+        SharedPreferences prefs = prefs(context);
+        long allowedSeconds = prefs.getLong(ALLOWANCE_PREFIX + packageName, 0L) * 60;
+        if (allowedSeconds <= 0) {
+            return 0L;
+        }
+        long usedSeconds = today().equals(prefs.getString(KEY_DAY, "")) ? prefs.getLong(USED_PREFIX + packageName, 0L) : 0L;
+        return Math.max(0L, allowedSeconds - usedSeconds);
+    }
+
+    // Charges the grant against today's allowance; returns false if it does not fit
+    public static boolean tryConsume(Context context, String packageName, long seconds) {
+        if (seconds <= 0 || seconds > remainingSeconds(context, packageName)) {
+            return false;
+        }
+        SharedPreferences prefs = prefs(context);
+        String today = today();
+        SharedPreferences.Editor editor = prefs.edit();
+        if (!today.equals(prefs.getString(KEY_DAY, ""))) {
+            for (String key : prefs.getAll().keySet()) {
+                if (key.startsWith(USED_PREFIX)) {
+                    editor.remove(key);
+                }
+            }
+            editor.putString(KEY_DAY, today);
+            editor.putLong(USED_PREFIX + packageName, seconds);
+        } else {
+            editor.putLong(USED_PREFIX + packageName, prefs.getLong(USED_PREFIX + packageName, 0L) + seconds);
+        }
+        editor.apply();
+        return true;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private static String today() {
+        Calendar calendar = Calendar.getInstance();
+        return String.format(Locale.US, "%04d-%02d-%02d",
+                calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.accountable;
+
+import android.view.accessibility.AccessibilityNodeInfo;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+// Reads the address bar of supported browsers from the accessibility node tree.
+// Traversal is depth- and node-bounded and every child node obtained is recycled.
+public final class BrowserUrlReader {
+
+    private static final int MAX_DEPTH = 16;
+    private static final int MAX_NODES = 250;
+
+    private static final Map<String, String> URL_BAR_IDS = new HashMap<>();
+
+    static {
+        URL_BAR_IDS.put("com.android.chrome", "com.android.chrome:id/url_bar");
+        URL_BAR_IDS.put("com.chrome.beta", "com.chrome.beta:id/url_bar");
+        URL_BAR_IDS.put("com.brave.browser", "com.brave.browser:id/url_bar");
+        URL_BAR_IDS.put("com.microsoft.emmx", "com.microsoft.emmx:id/url_bar");
+        URL_BAR_IDS.put("com.kiwibrowser.browser", "com.kiwibrowser.browser:id/url_bar");
+        URL_BAR_IDS.put("org.mozilla.firefox", "org.mozilla.firefox:id/mozac_browser_toolbar_url_view");
+        URL_BAR_IDS.put("com.sec.android.app.sbrowser", "com.sec.android.app.sbrowser:id/location_bar_edit_text");
+        URL_BAR_IDS.put("com.opera.browser", "com.opera.browser:id/url_field");
+        URL_BAR_IDS.put("com.duckduckgo.mobile.android", "com.duckduckgo.mobile.android:id/omnibarTextInput");
+    }
+
+    private BrowserUrlReader() {
+    }
+
+    public static boolean isSupportedBrowser(String packageName) {
+        return URL_BAR_IDS.containsKey(packageName);
+    }
+
+    public static boolean isUrlBar(AccessibilityNodeInfo node, String packageName) {
+        String urlBarId = URL_BAR_IDS.get(packageName);
+        return urlBarId != null && urlBarId.equals(node.getViewIdResourceName());
+    }
+
+    // URL shown in an address bar node, or null while the user is still typing into it
+    public static String readUrl(AccessibilityNodeInfo urlBar) {
+        if (urlBar.isFocused() || urlBar.getText() == null) {
+            return null;
+        }
+        return urlBar.getText().toString();
+    }
+
+    // Searches below root for the address bar; root itself is owned and recycled by the caller
+    public static String findUrl(AccessibilityNodeInfo root, String packageName) {
+        if (isUrlBar(root, packageName)) {
+            return readUrl(root);
+        }
+
+        ArrayDeque<AccessibilityNodeInfo> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        pushChildren(root, 1, nodes, depths);
+
+        String url = null;
+        int visited = 0;
+        while (!nodes.isEmpty()) {
+            AccessibilityNodeInfo node = nodes.pop();
+            int depth = depths.pop();
+            if (url == null && visited++ < MAX_NODES) {
+                if (isUrlBar(node, packageName)) {
+                    url = readUrl(node);
+                    if (url == null) {
+                        // Address bar found but being edited - no point searching further
+                        visited = MAX_NODES;
+                    }
+                } else if (depth < MAX_DEPTH) {
+                    pushChildren(node, depth + 1, nodes, depths);
+                }
+            }
+            node.recycle();
+        }
+        return url;
+    }
+
+    private static void pushChildren(AccessibilityNodeInfo node, int depth,
+                                     ArrayDeque<AccessibilityNodeInfo> nodes, ArrayDeque<Integer> depths) {
+        // Pushed in reverse so the toolbar, usually first, is visited first
+        for (int i = node.getChildCount() - 1; i >= 0; i--) {
+            AccessibilityNodeInfo child = node.getChild(i);
+            if (child != null) {
+                nodes.push(child);
+                depths.push(depth);
+            }
+        }
+    }
+}
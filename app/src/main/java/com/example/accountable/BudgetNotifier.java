@@ -0,0 +1,94 @@
+package com.example.accountable;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import androidx.core.app.NotificationCompat;
+
+// Ongoing notification counting down the foreground app's remaining budget or wallet time.
+// The system Chronometer renders the ticking from the deadline passed in setWhen, so the
+// notification is only re-posted when the deadline, the mode or the app actually changes.
+public class BudgetNotifier {
+
+    private static final String CHANNEL_ID = "budget_countdown";
+    private static final int NOTIFICATION_ID = 4201;
+    // Deadline shifts smaller than this are tick jitter, not a state change
+    private static final long DEADLINE_TOLERANCE = 10 * 1000L;
+
+    private final Context context;
+    private final NotificationManager manager;
+
+    private String shownPackage = "";
+    private boolean shownWallet = false;
+    private long shownDeadline = 0L;
+
+    public BudgetNotifier(Context context) {
+        this.context = context;
+        this.manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        createNotificationChannel();
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                CHANNEL_ID,
+                "Remaining Time",
+                NotificationManager.IMPORTANCE_LOW
+            );
+            channel.setDescription("Countdown for restricted apps while they are open");
+            channel.setShowBadge(false);
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    public void show(String packageName, String appName, long deadline, boolean isWallet) {
+        if (packageName.equals(shownPackage) && isWallet == shownWallet
+                && Math.abs(deadline - shownDeadline) < DEADLINE_TOLERANCE) {
+            return;
+        }
+        shownPackage = packageName;
+        shownWallet = isWallet;
+        shownDeadline = deadline;
+
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            NOTIFICATION_ID,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.ic_lock_idle_alarm)
+            .setContentTitle(appName)
+            .setContentText(isWallet ? "Extra time granted by your partner" : "Time left today")
+            .setWhen(deadline)
+            .setShowWhen(true)
+            .setUsesChronometer(true)
+            .setChronometerCountDown(true)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .setCategory(NotificationCompat.CATEGORY_PROGRESS)
+            .setContentIntent(pendingIntent);
+
+        try {
+            manager.notify(NOTIFICATION_ID, builder.build());
+        } catch (SecurityException e) {
+            // Notification permission not granted - the Toast warnings still apply
+        }
+    }
+
+    public void hide() {
+        if (shownPackage.isEmpty()) {
+            return;
+        }
+        shownPackage = "";
+        shownDeadline = 0L;
+        manager.cancel(NOTIFICATION_ID);
+    }
+}
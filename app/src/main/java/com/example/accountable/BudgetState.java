@@ -0,0 +1,78 @@
+package com.example.accountable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// In-memory snapshot of today's remaining time per restricted app, published by AppMonitoringService
+// and read by the widget and Quick Settings tile. Values are kept at display granularity (whole
+// minutes), so a publish only reports a change when something the user can see has changed.
+public final class BudgetState {
+
+    public static class Entry {
+        public final String packageName;
+        public final String appName;
+        public final long remainingMinutes;
+        public final boolean wallet;
+        public final boolean foreground;
+
+        public Entry(String packageName, String appName, long remainingMillis, boolean wallet, boolean foreground) {
+            this.packageName = packageName;
+            this.appName = appName;
+            this.remainingMinutes = (Math.max(0, remainingMillis) + 59999) / 60000;
+            this.wallet = wallet;
+            this.foreground = foreground;
+        }
+
+        boolean sameDisplay(Entry other) {
+            return packageName.equals(other.packageName) && remainingMinutes == other.remainingMinutes
+                    && wallet == other.wallet && foreground == other.foreground;
+        }
+
+        public String formatRemaining() {
+            if (remainingMinutes == 0) {
+                return "Blocked";
+            }
+            String time = remainingMinutes >= 60
+                    ? (remainingMinutes / 60) + "h " + (remainingMinutes % 60) + "m"
+                    : remainingMinutes + " min";
+            return wallet ? time + " extra" : time;
+        }
+    }
+
+    private static volatile List<Entry> entries = Collections.emptyList();
+
+    private BudgetState() {
+    }
+
+    public static List<Entry> getEntries() {
+        return entries;
+    }
+
+    // The app in the foreground, or else the one closest to running out
+    public static Entry getMostUrgent() {
+        Entry urgent = null;
+        for (Entry entry : entries) {
+            if (entry.foreground) {
+                return entry;
+            }
+            if (urgent == null || entry.remainingMinutes < urgent.remainingMinutes) {
+                urgent = entry;
+            }
+        }
+        return urgent;
+    }
+
+    // Returns true when the visible state changed and widgets/tiles should be refreshed
+    static boolean publish(List<Entry> newEntries) {
+        List<Entry> current = entries;
+        boolean changed = current.size() != newEntries.size();
+        for (int i = 0; !changed && i < current.size(); i++) {
+            changed = !current.get(i).sameDisplay(newEntries.get(i));
+        }
+        if (changed) {
+            entries = Collections.unmodifiableList(new ArrayList<>(newEntries));
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.accountable;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+
+// Quick Settings tile showing the remaining time of the foreground (or most urgent) restricted app.
+// The tile only renders while listening; AppMonitoringService asks for a refresh when a value changes.
+public class BudgetTileService extends TileService {
+
+    @Override
+    public void onStartListening() {
+        super.onStartListening();
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+
+        BudgetState.Entry entry = BudgetState.getMostUrgent();
+        if (entry == null) {
+            tile.setLabel("Accountable");
+            tile.setState(Tile.STATE_INACTIVE);
+            setSubtitle(tile, "No limits today");
+        } else {
+            tile.setLabel(entry.appName);
+            tile.setState(entry.remainingMinutes > 0 ? Tile.STATE_ACTIVE : Tile.STATE_UNAVAILABLE);
+            setSubtitle(tile, entry.formatRemaining());
+        }
+        tile.updateTile();
+    }
+
+    private static void setSubtitle(Tile tile, String subtitle) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            tile.setSubtitle(subtitle);
+        }
+    }
+
+    public static void requestUpdate(Context context) {
+        try {
+            TileService.requestListeningState(context, new ComponentName(context, BudgetTileService.class));
+        } catch (Exception e) {
+            // Tile not added by the user
+        }
+    }
+}
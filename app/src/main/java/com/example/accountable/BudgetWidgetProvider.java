@@ -0,0 +1,52 @@
+package com.example.accountable;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.widget.RemoteViews;
+import java.util.List;
+
+// Home-screen widget listing today's remaining time. It has no update period; AppMonitoringService
+// pushes updates through updateAll() whenever a displayed value changes.
+public class BudgetWidgetProvider extends AppWidgetProvider {
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        RemoteViews views = buildViews(context);
+        for (int appWidgetId : appWidgetIds) {
+            appWidgetManager.updateAppWidget(appWidgetId, views);
+        }
+    }
+
+    public static void updateAll(Context context) {
+        AppWidgetManager manager = AppWidgetManager.getInstance(context);
+        int[] ids = manager.getAppWidgetIds(new ComponentName(context, BudgetWidgetProvider.class));
+        if (ids.length > 0) {
+            manager.updateAppWidget(ids, buildViews(context));
+        }
+    }
+
+    private static RemoteViews buildViews(Context context) {
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.widget_budget);
+
+        List<BudgetState.Entry> entries = BudgetState.getEntries();
+        StringBuilder text = new StringBuilder();
+        for (BudgetState.Entry entry : entries) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            text.append(entry.foreground ? "▶ " : "").append(entry.appName).append(": ").append(entry.formatRemaining());
+        }
+        views.setTextViewText(R.id.widgetBudgetText, entries.isEmpty() ? "No restricted apps" : text);
+
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        views.setOnClickPendingIntent(R.id.widgetRoot, pendingIntent);
+        return views;
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.accountable;
+
+import android.util.Log;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stale-while-revalidate reads for hot documents and queries.
+// The local cache answers first so the screen renders without waiting on the network; the server copy is
+// then fetched in the background and delivered only if it differs. Each call site is named so cache and
+// server hits can be compared per screen.
+public final class CacheFirstReader {
+
+    private static final String TAG = "CacheFirstReader";
+
+    public interface DocumentCallback {
+        // fromCache: the copy may be stale and a server revalidation is still in flight
+        void onDocument(DocumentSnapshot snapshot, boolean fromCache);
+    }
+
+    public interface QueryCallback {
+        void onQuery(QuerySnapshot snapshot, boolean fromCache);
+    }
+
+    // Drives the screen's freshness indicator after a cached copy was shown
+    public interface FreshnessListener {
+        // The server copy was delivered or matched the cached one
+        void onFresh();
+
+        // The server could not be reached; the cached copy stays on screen
+        void onStale(Exception e);
+    }
+
+    // Per call site: cache hits, cache misses, server copies that changed the data, server copies that didn't, server failures
+    private static final Map<String, long[]> metrics = new ConcurrentHashMap<>();
+    private static final int CACHE_HIT = 0;
+    private static final int CACHE_MISS = 1;
+    private static final int SERVER_CHANGED = 2;
+    private static final int SERVER_UNCHANGED = 3;
+    private static final int SERVER_FAILED = 4;
+
+    private CacheFirstReader() {
+    }
+
+    // onFailure runs only when there was nothing to show from either source
+    public static void get(String callSite, DocumentReference ref, DocumentCallback callback,
+                           FreshnessListener freshness, OnFailureListener onFailure) {
+        ref.get(Source.CACHE)
+                .addOnSuccessListener(cached -> {
+                    count(callSite, CACHE_HIT);
+                    callback.onDocument(cached, true);
+                    ref.get(Source.SERVER)
+                            .addOnSuccessListener(fresh -> {
+                                boolean changed = fresh.exists() != cached.exists()
+                                        || (fresh.exists() && !fresh.getData().equals(cached.getData()));
+                                count(callSite, changed ? SERVER_CHANGED : SERVER_UNCHANGED);
+                                if (changed) {
+                                    callback.onDocument(fresh, false);
+                                }
+                                if (freshness != null) {
+                                    freshness.onFresh();
+                                }
+                            })
+                            .addOnFailureListener(e -> {
+                                count(callSite, SERVER_FAILED);
+                                Log.d(TAG, callSite + ": showing cached copy, server unavailable");
+                                if (freshness != null) {
+                                    freshness.onStale(e);
+                                }
+                            });
+                })
+                .addOnFailureListener(cacheMiss -> {
+                    count(callSite, CACHE_MISS);
+                    ref.get()
+                            .addOnSuccessListener(fresh -> {
+                                count(callSite, SERVER_CHANGED);
+                                callback.onDocument(fresh, false);
+                                if (freshness != null) {
+                                    freshness.onFresh();
+                                }
+                            })
+                            .addOnFailureListener(e -> {
+                                count(callSite, SERVER_FAILED);
+                                if (onFailure != null) {
+                                    onFailure.onFailure(e);
+                                }
+                            });
+                });
+    }
+
+    public static void get(String callSite, Query query, QueryCallback callback,
+                           FreshnessListener freshness, OnFailureListener onFailure) {
+        query.get(Source.CACHE)
+                .addOnSuccessListener(cached -> {
+                    // An empty cached result usually means the query was never run on this device
+                    if (cached.isEmpty()) {
+                        count(callSite, CACHE_MISS);
+                    } else {
+                        count(callSite, CACHE_HIT);
+                        callback.onQuery(cached, true);
+                    }
+                    query.get(Source.SERVER)
+                            .addOnSuccessListener(fresh -> {
+                                boolean changed = cached.isEmpty() || !dataOf(fresh).equals(dataOf(cached));
+                                count(callSite, changed ? SERVER_CHANGED : SERVER_UNCHANGED);
+                                if (changed) {
+                                    callback.onQuery(fresh, false);
+                                }
+                                if (freshness != null) {
+                                    freshness.onFresh();
+                                }
+                            })
+                            .addOnFailureListener(e -> {
+                                count(callSite, SERVER_FAILED);
+                                if (cached.isEmpty()) {
+                                    if (onFailure != null) {
+                                        onFailure.onFailure(e);
+                                    }
+                                } else {
+                                    Log.d(TAG, callSite + ": showing cached results, server unavailable");
+                                    if (freshness != null) {
+                                        freshness.onStale(e);
+                                    }
+                                }
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    count(callSite, CACHE_MISS);
+                    query.get()
+                            .addOnSuccessListener(fresh -> {
+                                count(callSite, SERVER_CHANGED);
+                                callback.onQuery(fresh, false);
+                                if (freshness != null) {
+                                    freshness.onFresh();
+                                }
+                            })
+                            .addOnFailureListener(serverError -> {
+                                count(callSite, SERVER_FAILED);
+                                if (onFailure != null) {
+                                    onFailure.onFailure(serverError);
+                                }
+                            });
+                });
+    }
+
+    private static List<Object> dataOf(QuerySnapshot snapshot) {
+        List<Object> data = new ArrayList<>();
+        for (DocumentSnapshot doc : snapshot.getDocuments()) {
+            data.add(doc.getId());
+            data.add(doc.getData());
+        }
+        return data;
+    }
+
+    private static void count(String callSite, int kind) {
+        long[] counts = metrics.get(callSite);
+        if (counts == null) {
+            counts = new long[5];
+            metrics.put(callSite, counts);
+        }
+        counts[kind]++;
+    }
+
+    public static String describeMetrics() {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : new TreeMap<>(metrics).entrySet()) {
+            long[] c = entry.getValue();
+            out.append(entry.getKey())
+                    .append(": cache ").append(c[CACHE_HIT]).append(" hit / ").append(c[CACHE_MISS]).append(" miss")
+                    .append(", server ").append(c[SERVER_CHANGED]).append(" changed / ").append(c[SERVER_UNCHANGED])
+                    .append(" unchanged / ").append(c[SERVER_FAILED]).append(" failed\n");
+        }
+        return out.length() > 0 ? out.toString() : "No cache-first reads yet\n";
+    }
+}
@@ -72,9 +72,8 @@ public class DataRecoveryActivity extends AppCompatActivity {
         }
 
         // Check if current user document has all required fields
-        db.collection("users").document(currentUserId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
+        UserDocumentRepository.getInstance()
+                .get(documentSnapshot -> {
                     if (documentSnapshot.exists()) {
                         StringBuilder status = new StringBuilder("📋 Scan Results:\n\n");
 
@@ -105,8 +104,7 @@ public class DataRecoveryActivity extends AppCompatActivity {
                         recoveryStatus.setText("❌ User document does not exist! This is a critical issue.");
                         fixButton.setEnabled(true);
                     }
-                })
-                .addOnFailureListener(e -> {
+                }, e -> {
                     recoveryStatus.setText("❌ Scan failed: " + e.getMessage());
                 });
     }
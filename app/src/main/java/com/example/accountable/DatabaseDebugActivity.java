@@ -3,6 +3,7 @@ package com.example.accountable;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -12,18 +13,29 @@ import androidx.appcompat.widget.Toolbar;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.Objects;
 
 public class DatabaseDebugActivity extends AppCompatActivity {
     private static final String TAG = "DatabaseDebug";
+    private static final int PAGE_SIZE = 25;
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUserId;
     private TextView debugOutput;
+    private Button loadMoreButton;
+
+    // Users are read a page at a time, after the last document of the previous page
+    private DocumentSnapshot lastUserDoc;
+    private int usersShown;
+    private int loadGeneration;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -58,24 +70,94 @@ public class DatabaseDebugActivity extends AppCompatActivity {
         debugOutput = findViewById(R.id.debugOutput);
         Button refreshButton = findViewById(R.id.refreshButton);
         Button fixDataButton = findViewById(R.id.fixDataButton);
+        loadMoreButton = findViewById(R.id.loadMoreButton);
 
         refreshButton.setOnClickListener(v -> debugDatabase());
         fixDataButton.setOnClickListener(v -> fixPartnershipData());
+        loadMoreButton.setOnClickListener(v -> loadUsersPage(loadGeneration));
     }
 
     private void debugDatabase() {
+        // Stale callbacks from an earlier refresh are dropped
+        int generation = ++loadGeneration;
+        lastUserDoc = null;
+        usersShown = 0;
+        loadMoreButton.setVisibility(View.GONE);
+
         StringBuilder output = new StringBuilder();
         output.append("🔍 DATABASE DEBUG REPORT\n");
         output.append("========================\n\n");
-        output.append("Current User ID: ").append(currentUserId.substring(0, 8)).append("...\n\n");
+        output.append("Current User ID: ").append(currentUserId.substring(0, 8)).append("...\n");
+        UserDocumentRepository repository = UserDocumentRepository.getInstance();
+        output.append("User doc cache: ").append(repository.getHitCount()).append(" hits, ")
+                .append(repository.getMissCount()).append(" misses\n");
+        output.append("Cache-first reads:\n").append(CacheFirstReader.describeMetrics()).append("\n");
+        debugOutput.setText(output.toString());
+
+        // Totals come from aggregation queries - one read per 1000 matching documents, not one per user
+        db.collection("users").count().get(AggregateSource.SERVER)
+                .addOnSuccessListener(snapshot -> {
+                    if (generation == loadGeneration) {
+                        debugOutput.append("📊 Total users: " + snapshot.getCount() + "\n\n");
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    if (generation == loadGeneration) {
+                        debugOutput.append("❌ Failed to count users: " + e.getMessage() + "\n\n");
+                    }
+                });
 
-        // Check all users in database
-        db.collection("users")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    output.append("📋 ALL USERS IN DATABASE:\n");
-                    output.append("Users found: ").append(queryDocumentSnapshots.size()).append("\n\n");
+        loadPartnershipAnalysis(generation);
+    }
+
+    private void loadPartnershipAnalysis(int generation) {
+        // Find people who chose current user as their partner
+        Query chosenMe = db.collection("users").whereEqualTo("mainPartnerId", currentUserId);
+        chosenMe.count().get(AggregateSource.SERVER)
+                .addOnSuccessListener(countSnapshot -> chosenMe.limit(PAGE_SIZE).get()
+                        .addOnSuccessListener(queryDocumentSnapshots -> {
+                            if (generation != loadGeneration) {
+                                return;
+                            }
+                            StringBuilder output = new StringBuilder();
+                            output.append("🔗 PARTNERSHIP ANALYSIS:\n");
+                            output.append("========================\n");
+
+                            long peopleYouHelp = countSnapshot.getCount();
+                            for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
+                                output.append("✅ ").append(doc.getString("email")).append(" chose you as partner\n");
+                            }
+                            if (peopleYouHelp > queryDocumentSnapshots.size()) {
+                                output.append("   ... and ").append(peopleYouHelp - queryDocumentSnapshots.size()).append(" more\n");
+                            }
+
+                            if (peopleYouHelp == 0) {
+                                output.append("❌ No one has chosen you as their accountability partner\n");
+                            }
+
+                            output.append("\nPeople you should see in 'People I Help': ").append(peopleYouHelp).append("\n\n");
+                            output.append("📋 USERS IN DATABASE (").append(PAGE_SIZE).append(" per page):\n\n");
+                            debugOutput.append(output.toString());
+
+                            loadUsersPage(generation);
+                        })
+                        .addOnFailureListener(e -> showLoadFailure(generation, e)))
+                .addOnFailureListener(e -> showLoadFailure(generation, e));
+    }
+
+    private void loadUsersPage(int generation) {
+        loadMoreButton.setEnabled(false);
 
+        Query page = db.collection("users").orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+        if (lastUserDoc != null) {
+            page = page.startAfter(lastUserDoc);
+        }
+        page.get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    if (generation != loadGeneration) {
+                        return;
+                    }
+                    StringBuilder output = new StringBuilder();
                     for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
                         String userId = doc.getId();
                         String email = doc.getString("email");
@@ -95,34 +177,32 @@ public class DatabaseDebugActivity extends AppCompatActivity {
 
                         output.append("\n");
                     }
-
-                    output.append("\n🔗 PARTNERSHIP ANALYSIS:\n");
-                    output.append("========================\n");
-
-                    // Find people who chose current user as their partner
-                    int peopleYouHelp = 0;
-                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        String mainPartnerId = doc.getString("mainPartnerId");
-                        if (mainPartnerId != null && mainPartnerId.equals(currentUserId)) {
-                            peopleYouHelp++;
-                            output.append("✅ ").append(doc.getString("email")).append(" chose you as partner\n");
-                        }
+                    usersShown += queryDocumentSnapshots.size();
+                    if (!queryDocumentSnapshots.isEmpty()) {
+                        lastUserDoc = queryDocumentSnapshots.getDocuments().get(queryDocumentSnapshots.size() - 1);
                     }
 
-                    if (peopleYouHelp == 0) {
-                        output.append("❌ No one has chosen you as their accountability partner\n");
-                    }
-
-                    output.append("\nPeople you should see in 'People I Help': ").append(peopleYouHelp).append("\n");
-
-                    debugOutput.setText(output.toString());
+                    // A short page means there is nothing further to load
+                    boolean more = queryDocumentSnapshots.size() == PAGE_SIZE;
+                    output.append(more ? "Showing " + usersShown + " users so far\n"
+                            : "End of users (" + usersShown + " shown)\n");
+                    debugOutput.append(output.toString());
+                    loadMoreButton.setVisibility(more ? View.VISIBLE : View.GONE);
+                    loadMoreButton.setEnabled(true);
                 })
                 .addOnFailureListener(e -> {
-                    output.append("❌ Failed to load users: ").append(e.getMessage()).append("\n");
-                    debugOutput.setText(output.toString());
+                    loadMoreButton.setEnabled(true);
+                    showLoadFailure(generation, e);
                 });
     }
 
+    private void showLoadFailure(int generation, Exception e) {
+        if (generation == loadGeneration) {
+            Log.e(TAG, "Debug query failed", e);
+            debugOutput.append("❌ Failed to load users: " + e.getMessage() + "\n");
+        }
+    }
+
     private void fixPartnershipData() {
         Toast.makeText(this, "🔧 Creating test partnership data...", Toast.LENGTH_SHORT).show();
 
@@ -0,0 +1,142 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.messaging.FirebaseMessaging;
+import java.util.Date;
+
+// Expiry for transient documents (requests, notifications, grant logs).
+// Every such document carries an expireAt timestamp. A Firestore TTL policy on expireAt lets the server
+// delete them; without one, the daily sweep below deletes the signed-in user's own expired documents in
+// batches. Readers also check isExpired() so a stale document is never acted on while it awaits deletion.
+// Documents written before expireAt existed are swept by their creation time instead, including the
+// retired instantNotifications/pendingNotifications collections. The composite indexes these queries need
+// (owner field + expireAt or creation time) and the TTL policies are in firestore.indexes.json.
+public final class DocumentExpiry {
+
+    private static final String TAG = "DocumentExpiry";
+    public static final String FIELD = "expireAt";
+
+    public static final long PENDING_NOTIFICATION_LIFETIME = 24 * 60 * 60 * 1000L;
+    public static final long REQUEST_LIFETIME = 7 * 24 * 60 * 60 * 1000L;
+    public static final long HISTORY_LIFETIME = 30 * 24 * 60 * 60 * 1000L;
+    // A request nobody answered within this window is no longer offered for approval
+    public static final long PENDING_REQUEST_WINDOW = 24 * 60 * 60 * 1000L;
+
+    private static final String PREFS_NAME = "document_expiry";
+    private static final String KEY_LAST_CLEANUP = "last_cleanup";
+    private static final long CLEANUP_INTERVAL = 24 * 60 * 60 * 1000L;
+    private static final int BATCH_SIZE = 400;
+
+    // Collections swept and the field naming the user who may delete each document
+    private static final String[][] SWEPT_COLLECTIONS = {
+            {"requests", "userId"},
+            {"notifications", "userId"},
+            {"autoGrants", "userId"},
+    };
+
+    // Legacy documents without expireAt: collection, owner field, creation-time field, lifetime
+    private static final LegacySweep[] LEGACY_SWEEPS = {
+            new LegacySweep("requests", "userId", "requestTime", REQUEST_LIFETIME),
+            new LegacySweep("notifications", "userId", "timestamp", HISTORY_LIFETIME),
+            new LegacySweep("autoGrants", "userId", "timestamp", HISTORY_LIFETIME),
+            // Replaced by the per-user inbox; addressed to the recipient's uid
+            new LegacySweep("instantNotifications", "fcmToken", "timestamp", PENDING_NOTIFICATION_LIFETIME),
+    };
+
+    private DocumentExpiry() {
+    }
+
+    public static Timestamp expireAt(long lifetimeMillis) {
+        return new Timestamp(new Date(System.currentTimeMillis() + lifetimeMillis));
+    }
+
+    public static boolean isExpired(DocumentSnapshot doc, long now) {
+        Timestamp expireAt = doc.getTimestamp(FIELD);
+        return expireAt != null && expireAt.toDate().getTime() <= now;
+    }
+
+    // Runs the sweep at most once a day
+    public static void maybeRunCleanup(Context context, FirebaseFirestore db, String userId) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(KEY_LAST_CLEANUP, 0L) < CLEANUP_INTERVAL) {
+            return;
+        }
+        prefs.edit().putLong(KEY_LAST_CLEANUP, now).apply();
+
+        Timestamp cutoff = new Timestamp(new Date(now));
+        for (String[] collection : SWEPT_COLLECTIONS) {
+            sweep(db, db.collection(collection[0])
+                    .whereEqualTo(collection[1], userId)
+                    .whereLessThan(FIELD, cutoff)
+                    .limit(BATCH_SIZE), collection[0], 0);
+        }
+        // The user's own inbox needs no owner filter
+        sweep(db, RequestInbox.inboxOf(db, userId)
+                .whereLessThan(FIELD, cutoff)
+                .limit(BATCH_SIZE), RequestInbox.COLLECTION, 0);
+
+        for (LegacySweep legacy : LEGACY_SWEEPS) {
+            sweep(db, db.collection(legacy.collection)
+                    .whereEqualTo(legacy.ownerField, userId)
+                    .whereLessThan(legacy.timeField, now - legacy.lifetime)
+                    .limit(BATCH_SIZE), legacy.collection + " (legacy)", 0);
+        }
+        // Retired pendingNotifications were addressed to the recipient's FCM token rather than their uid
+        FirebaseMessaging.getInstance().getToken()
+                .addOnSuccessListener(token -> sweep(db, db.collection("pendingNotifications")
+                        .whereEqualTo("fcmToken", token)
+                        .whereLessThan("timestamp", now - PENDING_NOTIFICATION_LIFETIME)
+                        .limit(BATCH_SIZE), "pendingNotifications (legacy)", 0))
+                .addOnFailureListener(e -> Log.d(TAG, "No FCM token for the legacy sweep: " + e.getMessage()));
+    }
+
+    private static void sweep(FirebaseFirestore db, Query query, String collection, int deletedSoFar) {
+        query.get()
+                .addOnSuccessListener(snapshots -> {
+                    if (snapshots.isEmpty()) {
+                        if (deletedSoFar > 0) {
+                            Log.d(TAG, "Deleted " + deletedSoFar + " expired documents from " + collection);
+                        }
+                        return;
+                    }
+                    WriteBatch batch = db.batch();
+                    for (DocumentSnapshot doc : snapshots.getDocuments()) {
+                        batch.delete(doc.getReference());
+                    }
+                    int deleted = deletedSoFar + snapshots.size();
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                if (snapshots.size() == BATCH_SIZE) {
+                                    // More may remain; deleted documents no longer match the query
+                                    sweep(db, query, collection, deleted);
+                                } else {
+                                    Log.d(TAG, "Deleted " + deleted + " expired documents from " + collection);
+                                }
+                            })
+                            .addOnFailureListener(e -> Log.e(TAG, "Failed to delete expired " + collection, e));
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Expired " + collection + " query failed", e));
+    }
+
+    private static final class LegacySweep {
+        final String collection;
+        final String ownerField;
+        final String timeField;
+        final long lifetime;
+
+        LegacySweep(String collection, String ownerField, String timeField, long lifetime) {
+            this.collection = collection;
+            this.ownerField = ownerField;
+            this.timeField = timeField;
+            this.lifetime = lifetime;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.accountable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Aho-Corasick automaton over a partner's blocked domains.
+// Every domain is compiled as ".domain/" and the URL host is scanned as ".host/", so a hit can only
+// end at the end of the host and only on a label boundary: "youtube.com" matches "m.youtube.com"
+// but not "notyoutube.com". Matching is a single pass over the host, independent of list size.
+public final class DomainMatcher {
+
+    private static final DomainMatcher EMPTY = new DomainMatcher(new String[0], new char[1][0], new int[1][0], new int[1], new int[]{-1});
+
+    private final String[] domains;
+    // Per state: sorted edge labels and their target states
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] fail;
+    // Index into domains of the pattern ending at this state (following fail links), or -1
+    private final int[] output;
+
+    private DomainMatcher(String[] domains, char[][] edgeChars, int[][] edgeTargets, int[] fail, int[] output) {
+        this.domains = domains;
+        this.edgeChars = edgeChars;
+        this.edgeTargets = edgeTargets;
+        this.fail = fail;
+        this.output = output;
+    }
+
+    public static DomainMatcher empty() {
+        return EMPTY;
+    }
+
+    public static DomainMatcher compile(Collection<String> rawDomains) {
+        Set<String> unique = new LinkedHashSet<>();
+        if (rawDomains != null) {
+            for (String raw : rawDomains) {
+                String domain = normalizeDomain(raw);
+                if (domain != null) {
+                    unique.add(domain);
+                }
+            }
+        }
+        if (unique.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] domains = unique.toArray(new String[0]);
+
+        // Build the trie; edges are keyed by (state, char) while it is still growing
+        Map<Long, Integer> trie = new HashMap<>();
+        List<StringBuilder> chars = new ArrayList<>();
+        List<Integer> terminal = new ArrayList<>();
+        chars.add(new StringBuilder());
+        terminal.add(-1);
+
+        for (int i = 0; i < domains.length; i++) {
+            String pattern = "." + domains[i] + "/";
+            int state = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                char c = pattern.charAt(j);
+                long key = ((long) state << 16) | c;
+                Integer next = trie.get(key);
+                if (next == null) {
+                    next = chars.size();
+                    chars.add(new StringBuilder());
+                    terminal.add(-1);
+                    chars.get(state).append(c);
+                    trie.put(key, next);
+                }
+                state = next;
+            }
+            terminal.set(state, i);
+        }
+
+        int stateCount = chars.size();
+        char[][] edgeChars = new char[stateCount][];
+        int[][] edgeTargets = new int[stateCount][];
+        int[] output = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            char[] c = chars.get(s).toString().toCharArray();
+            Arrays.sort(c);
+            edgeChars[s] = c;
+            edgeTargets[s] = new int[c.length];
+            for (int k = 0; k < c.length; k++) {
+                edgeTargets[s][k] = trie.get(((long) s << 16) | c[k]);
+            }
+            output[s] = terminal.get(s);
+        }
+
+        // Breadth-first pass to compute failure links and merge outputs
+        int[] fail = new int[stateCount];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : edgeTargets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        DomainMatcher partial = new DomainMatcher(domains, edgeChars, edgeTargets, fail, output);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int k = 0; k < edgeChars[state].length; k++) {
+                char c = edgeChars[state][k];
+                int child = edgeTargets[state][k];
+                int f = fail[state];
+                int next;
+                while ((next = partial.edge(f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next >= 0 ? next : 0;
+                if (output[child] < 0) {
+                    output[child] = output[fail[child]];
+                }
+                queue.add(child);
+            }
+        }
+        return partial;
+    }
+
+    public boolean isEmpty() {
+        return domains.length == 0;
+    }
+
+    public int size() {
+        return domains.length;
+    }
+
+    // Returns the blocked domain the URL falls under, or null when it is allowed
+    public String match(CharSequence url) {
+        if (domains.length == 0 || url == null) {
+            return null;
+        }
+        int start = hostStart(url);
+        int end = hostEnd(url, start);
+        if (end <= start) {
+            return null;
+        }
+
+        int state = step(0, '.');
+        for (int i = start; i < end; i++) {
+            state = step(state, Character.toLowerCase(url.charAt(i)));
+        }
+        state = step(state, '/');
+        int hit = output[state];
+        return hit >= 0 ? domains[hit] : null;
+    }
+
+    private int step(int state, char c) {
+        int next;
+        while ((next = edge(state, c)) < 0 && state != 0) {
+            state = fail[state];
+        }
+        return next >= 0 ? next : 0;
+    }
+
+    private int edge(int state, char c) {
+        char[] labels = edgeChars[state];
+        int lo = 0;
+        int hi = labels.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (labels[mid] < c) {
+                lo = mid + 1;
+            } else if (labels[mid] > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTargets[state][mid];
+            }
+        }
+        return -1;
+    }
+
+    // Skips surrounding whitespace, an optional scheme and any user-info before the host
+    private static int hostStart(CharSequence url) {
+        int i = 0;
+        int length = url.length();
+        while (i < length && Character.isWhitespace(url.charAt(i))) {
+            i++;
+        }
+        for (int j = i; j < length && j < i + 16; j++) {
+            char c = url.charAt(j);
+            if (c == ':' && j + 2 < length && url.charAt(j + 1) == '/' && url.charAt(j + 2) == '/') {
+                i = j + 3;
+                break;
+            }
+            if (c == '/' || c == '.') {
+                break;
+            }
+        }
+        int hostStart = i;
+        for (int j = i; j < length; j++) {
+            char c = url.charAt(j);
+            if (c == '@') {
+                hostStart = j + 1;
+            } else if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+        }
+        return hostStart;
+    }
+
+    private static int hostEnd(CharSequence url, int start) {
+        int i = start;
+        int length = url.length();
+        while (i < length) {
+            char c = url.charAt(i);
+            if (c == '/' || c == ':' || c == '?' || c == '#' || Character.isWhitespace(c)) {
+                break;
+            }
+            i++;
+        }
+        // Fully qualified hosts may end with a dot
+        if (i > start && url.charAt(i - 1) == '.') {
+            i--;
+        }
+        return i;
+    }
+
+    static String normalizeDomain(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String value = raw.trim();
+        int start = hostStart(value);
+        int end = hostEnd(value, start);
+        if (end <= start) {
+            return null;
+        }
+        String domain = value.substring(start, end).toLowerCase(Locale.US);
+        if (domain.startsWith("*.")) {
+            domain = domain.substring(2);
+        }
+        if (domain.startsWith("www.")) {
+            domain = domain.substring(4);
+        }
+        while (domain.startsWith(".")) {
+            domain = domain.substring(1);
+        }
+        return domain.isEmpty() || domain.indexOf('.') < 0 ? null : domain;
+    }
+}
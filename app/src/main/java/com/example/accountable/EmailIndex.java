@@ -0,0 +1,83 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Email -> uid index (emailIndex/{normalized email}) so finding a partner is one document read.
+// Written together with the user document on sign-up; accounts created before the index existed are
+// backfilled the next time their owner opens the app.
+public final class EmailIndex {
+
+    private static final String TAG = "EmailIndex";
+    private static final String COLLECTION = "emailIndex";
+    private static final String PREFS_NAME = "email_index";
+    private static final String KEY_INDEXED_PREFIX = "indexed_";
+
+    private EmailIndex() {
+    }
+
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static DocumentReference documentFor(FirebaseFirestore db, String email) {
+        // '/' is legal in an email's local part but not in a document ID
+        return db.collection(COLLECTION).document(normalize(email).replace("/", "%2F"));
+    }
+
+    private static Map<String, Object> entry(String userId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("uid", userId);
+        data.put("updatedAt", System.currentTimeMillis());
+        return data;
+    }
+
+    // Adds the user's index entry to a batch that also creates their user document
+    public static void addTo(WriteBatch batch, FirebaseFirestore db, String userId, String email) {
+        if (email != null) {
+            batch.set(documentFor(db, email), entry(userId));
+        }
+    }
+
+    public static void addTo(Transaction transaction, FirebaseFirestore db, String userId, String email) {
+        if (email != null) {
+            transaction.set(documentFor(db, email), entry(userId));
+        }
+    }
+
+    // Writes the entry once per device for accounts that predate the index
+    public static void ensureIndexed(Context context, FirebaseFirestore db, String userId, String email) {
+        if (email == null) {
+            return;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = KEY_INDEXED_PREFIX + userId;
+        if (normalize(email).equals(prefs.getString(key, null))) {
+            return;
+        }
+        documentFor(db, email)
+                .set(entry(userId))
+                .addOnSuccessListener(aVoid -> prefs.edit().putString(key, normalize(email)).apply())
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to index email", e));
+    }
+
+    // Delivers the uid registered for the email, or null if there is none
+    public static void lookup(FirebaseFirestore db, String email, OnSuccessListener<String> onResult,
+                              OnFailureListener onFailure) {
+        documentFor(db, email)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> onResult.onSuccess(
+                        documentSnapshot.exists() ? documentSnapshot.getString("uid") : null))
+                .addOnFailureListener(onFailure);
+    }
+}
@@ -5,6 +5,7 @@ import android.os.Bundle;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import com.google.android.material.textfield.TextInputEditText;
@@ -20,6 +21,8 @@ public class FriendControlActivity extends AppCompatActivity {
     private TextInputEditText friendEmailInput;
     private TextView accessCodeText;
     private SharedPreferences prefs;
+    private String helpeeId;
+    private String helpeeName;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,6 +47,16 @@ public class FriendControlActivity extends AppCompatActivity {
         // Initialize SharedPreferences
         prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
 
+        // Opened for a person I help: access codes are offline unlock codes for them
+        helpeeId = getIntent().getStringExtra("helpeeId");
+        helpeeName = getIntent().getStringExtra("helpeeName");
+        if (helpeeId != null) {
+            if (getSupportActionBar() != null) {
+                getSupportActionBar().setTitle("Unlock code for " + helpeeName);
+            }
+            generateCodeButton.setText("Generate Unlock Code");
+        }
+
         // Load saved friend data
         loadFriendData();
 
@@ -53,9 +66,35 @@ public class FriendControlActivity extends AppCompatActivity {
     }
 
     private void generateAccessCode() {
-        Random random = new Random();
-        String code = String.format("%06d", random.nextInt(1000000));
-        accessCodeText.setText(code);
+        if (helpeeId == null) {
+            Random random = new Random();
+            String code = String.format("%06d", random.nextInt(1000000));
+            accessCodeText.setText(code);
+            return;
+        }
+
+        // Unlock code for someone I help - works offline once the shared secret is cached
+        String secret = UnlockCodes.getSecret(this, helpeeId);
+        if (secret == null) {
+            Toast.makeText(this, "Connect to the internet once to set up unlock codes for " + helpeeName,
+                         Toast.LENGTH_LONG).show();
+            return;
+        }
+        String[] labels = new String[UnlockCodes.DURATION_MINUTES.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = UnlockCodes.DURATION_MINUTES[i] + " minutes";
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Unlock " + helpeeName + "'s app for")
+                .setItems(labels, (dialog, which) -> {
+                    int minutes = UnlockCodes.DURATION_MINUTES[which];
+                    String code = UnlockCodes.generate(secret, minutes, System.currentTimeMillis());
+                    accessCodeText.setText(code);
+                    Toast.makeText(this, "Code unlocks " + minutes + " minutes. Use it within 5 minutes.",
+                                 Toast.LENGTH_LONG).show();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
     private void loadFriendData() {
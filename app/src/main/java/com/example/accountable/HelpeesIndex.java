@@ -0,0 +1,70 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.HashMap;
+import java.util.Map;
+
+// Denormalized list of the people a partner helps: users/{partnerId}/helpees/{helpeeId}.
+// Entries are added and removed in the same transaction that changes the helpee's mainPartnerId, so the
+// index never disagrees with the partnership. People I Help listens to it directly.
+public final class HelpeesIndex {
+
+    private static final String TAG = "HelpeesIndex";
+    private static final String COLLECTION = "helpees";
+    private static final String PREFS_NAME = "helpees_index";
+    private static final String KEY_BACKFILLED_PREFIX = "backfilled_";
+
+    private HelpeesIndex() {
+    }
+
+    public static CollectionReference of(FirebaseFirestore db, String partnerId) {
+        return db.collection("users").document(partnerId).collection(COLLECTION);
+    }
+
+    public static void add(Transaction transaction, FirebaseFirestore db, String partnerId, String helpeeId,
+                           String email, String displayName) {
+        Map<String, Object> entry = new HashMap<>();
+        entry.put("email", email);
+        entry.put("displayName", displayName);
+        entry.put("since", System.currentTimeMillis());
+        transaction.set(of(db, partnerId).document(helpeeId), entry);
+    }
+
+    public static void remove(Transaction transaction, FirebaseFirestore db, String partnerId, String helpeeId) {
+        transaction.delete(of(db, partnerId).document(helpeeId));
+    }
+
+    // Partnerships made before the index existed: copies them in once per device with the old query
+    public static void backfill(Context context, FirebaseFirestore db, String partnerId) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = KEY_BACKFILLED_PREFIX + partnerId;
+        if (prefs.getBoolean(key, false)) {
+            return;
+        }
+        db.collection("users")
+                .whereEqualTo("mainPartnerId", partnerId)
+                .get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    WriteBatch batch = db.batch();
+                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
+                        Map<String, Object> entry = new HashMap<>();
+                        entry.put("email", doc.getString("email"));
+                        entry.put("displayName", doc.getString("displayName"));
+                        // merge keeps "since" on entries the index already has
+                        batch.set(of(db, partnerId).document(doc.getId()), entry, SetOptions.merge());
+                    }
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> prefs.edit().putBoolean(key, true).apply())
+                            .addOnFailureListener(e -> Log.e(TAG, "Helpees backfill failed", e));
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Helpees backfill query failed", e));
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.accountable;
+
+import android.util.Log;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.SetOptions;
+import java.util.HashMap;
+import java.util.Map;
+
+// All of a helpee's daily limits in one document: limits/{userId} with a "limits" map of package -> minutes.
+// The partner screen and the monitoring service each hold one listener on it, so every limit arrives in a
+// single read and later edits arrive as one document update. Replaces the per-package appLimits documents,
+// which migrateIfNeeded() copies over a page at a time.
+public final class LimitsStore {
+
+    private static final String TAG = "LimitsStore";
+    private static final String COLLECTION = "limits";
+    private static final String FIELD = "limits";
+    private static final String FIELD_MIGRATED = "migratedFromAppLimits";
+    private static final int MIGRATION_PAGE_SIZE = 100;
+
+    private LimitsStore() {
+    }
+
+    public static DocumentReference documentFor(FirebaseFirestore db, String userId) {
+        return db.collection(COLLECTION).document(userId);
+    }
+
+    // Any number of edited limits in one write; merge folds them into the existing map
+    public static Task<Void> setLimits(FirebaseFirestore db, String userId, Map<String, Object> minutesByPackage) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD, minutesByPackage);
+        data.put("updatedAt", System.currentTimeMillis());
+        return documentFor(db, userId).set(data, SetOptions.merge());
+    }
+
+    // package -> minutes; empty when the document does not exist yet
+    public static Map<String, Long> read(DocumentSnapshot snapshot) {
+        Map<String, Long> limits = new HashMap<>();
+        Object field = snapshot != null ? snapshot.get(FIELD) : null;
+        if (field instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) field).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    limits.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        return limits;
+    }
+
+    // Copies the user's appLimits documents into limits/{userId} unless that already happened. Pages are
+    // streamed in document order, and each page is applied in a transaction that only fills packages the
+    // new document lacks, so a limit set on the new path meanwhile is never overwritten by an old value.
+    public static void migrateIfNeeded(FirebaseFirestore db, String userId, DocumentSnapshot current) {
+        if (current != null && Boolean.TRUE.equals(current.getBoolean(FIELD_MIGRATED))) {
+            return;
+        }
+        migratePage(db, userId, null, 0);
+    }
+
+    private static void migratePage(FirebaseFirestore db, String userId, DocumentSnapshot after, int copiedSoFar) {
+        Query page = db.collection("appLimits")
+                .whereEqualTo("partnerId", userId)
+                .orderBy(FieldPath.documentId())
+                .limit(MIGRATION_PAGE_SIZE);
+        if (after != null) {
+            page = page.startAfter(after);
+        }
+        page.get()
+                .addOnSuccessListener(queryDocumentSnapshots -> {
+                    Map<String, Long> oldLimits = new HashMap<>();
+                    for (DocumentSnapshot doc : queryDocumentSnapshots.getDocuments()) {
+                        String packageName = doc.getString("packageName");
+                        Long minutes = doc.getLong("dailyLimitMinutes");
+                        if (packageName != null) {
+                            oldLimits.put(packageName, minutes != null ? minutes : 0L);
+                        }
+                    }
+                    boolean lastPage = queryDocumentSnapshots.size() < MIGRATION_PAGE_SIZE;
+                    DocumentReference ref = documentFor(db, userId);
+
+                    db.runTransaction(transaction -> {
+                                Map<String, Long> existing = read(transaction.get(ref));
+                                Map<String, Object> missing = new HashMap<>();
+                                for (Map.Entry<String, Long> entry : oldLimits.entrySet()) {
+                                    if (!existing.containsKey(entry.getKey())) {
+                                        missing.put(entry.getKey(), entry.getValue());
+                                    }
+                                }
+                                Map<String, Object> data = new HashMap<>();
+                                data.put(FIELD, missing);
+                                if (lastPage) {
+                                    data.put(FIELD_MIGRATED, true);
+                                }
+                                transaction.set(ref, data, SetOptions.merge());
+                                return missing.size();
+                            })
+                            .addOnSuccessListener(copied -> {
+                                int total = copiedSoFar + copied;
+                                if (lastPage) {
+                                    Log.d(TAG, "Migrated " + total + " appLimits entries for " + userId);
+                                } else {
+                                    migratePage(db, userId,
+                                            queryDocumentSnapshots.getDocuments().get(queryDocumentSnapshots.size() - 1), total);
+                                }
+                            })
+                            .addOnFailureListener(e -> Log.e(TAG, "Limits migration failed", e));
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Limits migration query failed", e));
+    }
+}
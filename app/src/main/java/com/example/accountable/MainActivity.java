@@ -2,7 +2,6 @@ package com.example.accountable;
 
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Build;
@@ -15,14 +14,11 @@ import android.widget.Button;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
 import androidx.core.content.ContextCompat;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.messaging.FirebaseMessaging;
 import java.util.HashMap;
@@ -36,7 +32,6 @@ public class MainActivity extends AppCompatActivity {
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
-    private ListenerRegistration accessRequestListener;
     private android.os.Handler listenerHealthHandler;
     private Runnable listenerHealthCheck;
     private boolean waitingForOverlayPermission = false;
@@ -65,12 +60,15 @@ public class MainActivity extends AppCompatActivity {
         // Get and save FCM token
         getFCMToken();
 
+        // Delete this user's expired requests and notifications (at most once a day)
+        DocumentExpiry.maybeRunCleanup(this, db, currentUser.getUid());
+
         // Setup notification channel and request permissions
         createNotificationChannel();
         requestNotificationPermission();
 
         // Start listening for access requests
-        setupAccessRequestListener();
+        RequestInbox.start(this);
         startListenerHealthCheck();
 
         setContentView(R.layout.activity_main);
@@ -94,6 +92,8 @@ public class MainActivity extends AppCompatActivity {
 
         signOutBtn.setOnClickListener(v -> {
             mAuth.signOut();
+            UserDocumentRepository.getInstance().clear();
+            RequestInbox.stop();
             Intent intent = new Intent(MainActivity.this, AuthActivity.class);
             intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
             startActivity(intent);
@@ -103,11 +103,13 @@ public class MainActivity extends AppCompatActivity {
 
     private void ensureUserDocumentExists(FirebaseUser user) {
         // Simplified and fast - just ensure document exists
-        db.collection("users").document(user.getUid())
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
+        UserDocumentRepository.getInstance()
+                .get(documentSnapshot -> {
                     if (!documentSnapshot.exists()) {
+                        // May only mean this device has no cached copy yet; the create checks the server
                         createUserDocument(user);
+                    } else {
+                        EmailIndex.ensureIndexed(this, db, user.getUid(), user.getEmail());
                     }
                     // Skip heavy updates - keep it fast
                 });
@@ -122,7 +124,22 @@ public class MainActivity extends AppCompatActivity {
         userProfile.put("mainPartnerId", null);
         userProfile.put("partners", new java.util.ArrayList<String>());
 
-        db.collection("users").document(user.getUid()).set(userProfile);
+        // A transaction, so an existing profile (e.g. one not cached offline) is never overwritten
+        DocumentReference userRef = db.collection("users").document(user.getUid());
+        db.runTransaction(transaction -> {
+                    if (transaction.get(userRef).exists()) {
+                        return false;
+                    }
+                    transaction.set(userRef, userProfile);
+                    EmailIndex.addTo(transaction, db, user.getUid(), user.getEmail());
+                    return true;
+                })
+                .addOnSuccessListener(created -> {
+                    if (!created) {
+                        EmailIndex.ensureIndexed(this, db, user.getUid(), user.getEmail());
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to create user document", e));
         // Removed toasts for speed - silent creation
     }
 
@@ -185,10 +202,8 @@ public class MainActivity extends AppCompatActivity {
         listenerHealthCheck = new Runnable() {
             @Override
             public void run() {
-                // Check if listener is still active
-                if (accessRequestListener == null) {
-                    setupAccessRequestListener(); // Silent reconnection
-                }
+                // Re-registers the inbox listener if it failed; no-op while it is active
+                RequestInbox.start(MainActivity.this);
                 // Schedule next check in 2 minutes (less frequent)
                 listenerHealthHandler.postDelayed(this, 120000);
             }
@@ -203,88 +218,10 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
-    private void setupAccessRequestListener() {
-        FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null) {
-            return;
-        }
-
-        String userId = currentUser.getUid();
-
-        // Get user's FCM token to match notifications
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(userDoc -> {
-                    String userFCMToken = userDoc.getString("fcmToken");
-                    if (userFCMToken != null) {
-                        // Listen for new pending notifications for this user's FCM token
-                        accessRequestListener = db.collection("pendingNotifications")
-                                .whereEqualTo("fcmToken", userFCMToken)
-                                .whereEqualTo("status", "pending")
-                                .addSnapshotListener((snapshots, e) -> {
-                                    if (e != null) {
-                                        // Silent reconnect after delay
-                                        new android.os.Handler().postDelayed(() -> {
-                                            accessRequestListener = null;
-                                            setupAccessRequestListener();
-                                        }, 5000);
-                                        return;
-                                    }
-
-                                    if (snapshots != null) {
-                                        for (DocumentChange dc : snapshots.getDocumentChanges()) {
-                                            if (dc.getType() == DocumentChange.Type.ADDED) {
-                                                // New notification found
-                                                DocumentSnapshot document = dc.getDocument();
-                                                String requesterName = document.getString("userName");
-                                                String appName = document.getString("appName");
-                                                String requestId = document.getString("requestId");
-                                                Long requestedSeconds = document.getLong("requestedSeconds");
-
-                                                showAccessRequestNotification(requestId, requesterName, appName, requestedSeconds != null ? requestedSeconds : 0L);
-
-                                                // Mark notification as delivered
-                                                document.getReference().update("status", "delivered");
-                                            }
-                                        }
-                                    }
-                                });
-                    }
-                });
-    }
-
-    private void showAccessRequestNotification(String requestId, String requesterName, String appName, long requestedSeconds) {
-        // Create intent that opens PartnerApprovalActivity
-        Intent intent = new Intent(this, PartnerApprovalActivity.class);
-        intent.putExtra("requestId", requestId);
-        intent.putExtra("requesterName", requesterName);
-        intent.putExtra("appName", appName);
-        intent.putExtra("requestedSeconds", requestedSeconds); // Pass the requested seconds
-        intent.putExtra("requestTime", new java.text.SimpleDateFormat("HH:mm", java.util.Locale.getDefault()).format(new java.util.Date()));
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
-                .setSmallIcon(android.R.drawable.ic_dialog_info)
-                .setContentTitle("Access Request")
-                .setContentText(requesterName + " wants to use " + appName)
-                .setStyle(new NotificationCompat.BigTextStyle()
-                        .bigText(requesterName + " is asking for permission to use " + appName + ". Tap to approve or deny."))
-                .setPriority(NotificationCompat.PRIORITY_HIGH)
-                .setAutoCancel(true)
-                .setContentIntent(pendingIntent);
-
-        NotificationManager notificationManager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
-        notificationManager.notify((int) System.currentTimeMillis(), builder.build());
-    }
-
     @Override
     protected void onResume() {
         super.onResume();
-        if (accessRequestListener == null) {
-            setupAccessRequestListener();
-        }
+        RequestInbox.start(this);
 
         // Handle permission flow continuation
         if (waitingForOverlayPermission) {
@@ -312,9 +249,7 @@ public class MainActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         stopListenerHealthCheck();
-        if (accessRequestListener != null) {
-            accessRequestListener.remove();
-        }
+        // The request inbox stays registered for the messaging service
     }
 
     // Simple permission requests - just like requestNotificationPermission()
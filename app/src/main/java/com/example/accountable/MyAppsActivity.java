@@ -175,9 +175,8 @@ public class MyAppsActivity extends AppCompatActivity {
             return;
         }
         String userId = currentUser.getUid();
-        db.collection("users").document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
+        UserDocumentRepository.getInstance()
+                .get(documentSnapshot -> {
                     if (documentSnapshot.exists()) {
                         List<String> selectedPackages = (List<String>) documentSnapshot.get("selectedApps");
                         if (selectedPackages != null && adapter != null) {
@@ -196,8 +195,7 @@ public class MyAppsActivity extends AppCompatActivity {
                     } else {
                         Toast.makeText(MyAppsActivity.this, "No previous selections found", Toast.LENGTH_SHORT).show();
                     }
-                })
-                .addOnFailureListener(e -> {
+                }, e -> {
                     Toast.makeText(MyAppsActivity.this, "Failed to load selections: " + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
     }
@@ -237,9 +235,8 @@ public class MyAppsActivity extends AppCompatActivity {
                     .set(unrestrictRequest)
                     .addOnSuccessListener(aVoid -> {
                         // Get partner ID and send notification
-                        db.collection("users").document(currentUserId)
-                                .get()
-                                .addOnSuccessListener(userDoc -> {
+                        UserDocumentRepository.getInstance()
+                                .get(userDoc -> {
                                     String partnerId = userDoc.getString("mainPartnerId");
                                     if (partnerId != null) {
                                         sendUnrestrictNotification(partnerId, userName, appName, unrestrictRequest.getRequestId());
@@ -259,30 +256,13 @@ public class MyAppsActivity extends AppCompatActivity {
     }
 
     private void sendUnrestrictNotification(String partnerId, String userName, String appName, String requestId) {
-        // Get partner's FCM token and send notification
-        db.collection("users").document(partnerId)
-                .get()
-                .addOnSuccessListener(partnerDoc -> {
-                    String fcmToken = partnerDoc.getString("fcmToken");
-                    if (fcmToken != null) {
-                        // Create notification data for unrestrict request
-                        Map<String, Object> notificationData = new HashMap<>();
-                        notificationData.put("fcmToken", fcmToken);
-                        notificationData.put("requestId", requestId);
-                        notificationData.put("userName", userName);
-                        notificationData.put("appName", appName);
-                        notificationData.put("requestedSeconds", 0L); // No time for unrestrict
-                        notificationData.put("message", userName + " wants to remove " + appName + " from restrictions");
-                        notificationData.put("type", "unrestrict_request");
-                        notificationData.put("timestamp", System.currentTimeMillis());
-                        notificationData.put("status", "pending");
-
-                        // Save to notifications collection
-                        db.collection("pendingNotifications").add(notificationData)
-                                .addOnFailureListener(e -> {
+        // One notification document per request, delivered by the partner's request inbox
+        RequestInbox.documentFor(db, partnerId, requestId)
+                .set(RequestInbox.buildNotification(partnerId, requestId, userName, appName,
+                        0L, // No time for unrestrict
+                        "unrestrict_request", userName + " wants to remove " + appName + " from restrictions"))
+                .addOnFailureListener(e -> {
 
-                                });
-                    }
                 });
     }
 
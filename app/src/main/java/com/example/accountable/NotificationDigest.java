@@ -0,0 +1,111 @@
+package com.example.accountable;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// Collapses repeated block events into one partner notification per (app, day).
+// Events are coalesced for COALESCE_WINDOW and then written in a single batch to a notification document
+// with a deterministic id, so retries only bump its counters instead of adding documents and alerts.
+public class NotificationDigest {
+
+    private static final String TAG = "NotificationDigest";
+    private static final long COALESCE_WINDOW = 2 * 60 * 1000L;
+
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushTask = this::flush;
+
+    // Pending digests keyed by notification document id
+    private final Map<String, Map<String, Object>> pending = new LinkedHashMap<>();
+    private final Map<String, Long> pendingCounts = new HashMap<>();
+    // Digests already created today - later flushes only update counts
+    private final Set<String> createdToday = new HashSet<>();
+    private String createdDay = "";
+    private boolean flushScheduled = false;
+
+    public NotificationDigest(FirebaseFirestore db, String userId) {
+        this.db = db;
+        this.userId = userId;
+    }
+
+    // payload is the full notification built for the partner; only the first event of the day uses all of it
+    public void record(String packageName, Map<String, Object> payload) {
+        long now = System.currentTimeMillis();
+        String day = dayKey(now);
+        if (!day.equals(createdDay)) {
+            createdDay = day;
+            createdToday.clear();
+        }
+        String docId = userId + "_" + day + "_" + packageName;
+
+        Map<String, Object> digest = pending.get(docId);
+        if (digest == null) {
+            digest = new HashMap<>();
+            if (!createdToday.contains(docId)) {
+                digest.putAll(payload);
+                digest.put("day", day);
+                digest.put("firstBlockedAt", now);
+                digest.put(DocumentExpiry.FIELD, DocumentExpiry.expireAt(DocumentExpiry.HISTORY_LIFETIME));
+            }
+            pending.put(docId, digest);
+        }
+        // Latest usage figures win; the count grows with every event in the window
+        digest.put("usedTime", payload.get("usedTime"));
+        digest.put("timeLimit", payload.get("timeLimit"));
+        digest.put("lastBlockedAt", now);
+        pendingCounts.put(docId, pendingCounts.getOrDefault(docId, 0L) + 1);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushTask, COALESCE_WINDOW);
+        }
+    }
+
+    public void flush() {
+        handler.removeCallbacks(flushTask);
+        flushScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        WriteBatch batch = db.batch();
+        for (Map.Entry<String, Map<String, Object>> entry : pending.entrySet()) {
+            Map<String, Object> digest = entry.getValue();
+            digest.put("blockCount", FieldValue.increment(pendingCounts.getOrDefault(entry.getKey(), 0L)));
+            digest.put("timestamp", System.currentTimeMillis());
+            batch.set(db.collection("notifications").document(entry.getKey()), digest, SetOptions.merge());
+        }
+        Set<String> flushed = new HashSet<>(pending.keySet());
+        createdToday.addAll(flushed);
+        pending.clear();
+        pendingCounts.clear();
+
+        batch.commit()
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Flushed " + flushed.size() + " notification digests"))
+                .addOnFailureListener(e -> {
+                    // Let the next event for these apps send the full payload again
+                    Log.e(TAG, "Failed to flush notification digests", e);
+                    createdToday.removeAll(flushed);
+                });
+    }
+
+    private static String dayKey(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return String.format(Locale.US, "%04d-%02d-%02d",
+                calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.accountable;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -11,6 +12,8 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.text.SimpleDateFormat;
@@ -38,6 +41,7 @@ public class PartnerApprovalActivity extends AppCompatActivity {
     private Button denyButton;
 
     private long userRequestedSeconds = 0;
+    private boolean expired = false;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -101,17 +105,21 @@ public class PartnerApprovalActivity extends AppCompatActivity {
 
     private void loadRequestData() {
         if (requestId != null) {
-            db.collection("requests").document(requestId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
+            // requestType never changes after creation, so the cached copy is safe to show straight away
+            CacheFirstReader.get("PartnerApproval.request", db.collection("requests").document(requestId),
+                    (documentSnapshot, fromCache) -> {
                         if (documentSnapshot.exists()) {
                             String requestType = documentSnapshot.getString("requestType");
                             displayRequestInfo(requestType);
+                            if (isStalePendingRequest(documentSnapshot)) {
+                                showExpired();
+                            }
                         } else {
                             displayRequestInfo(null);
                         }
-                    })
-                    .addOnFailureListener(e -> {
+                    },
+                    null,
+                    e -> {
                         displayRequestInfo(null);
                     });
         } else {
@@ -119,6 +127,23 @@ public class PartnerApprovalActivity extends AppCompatActivity {
         }
     }
 
+    private boolean isStalePendingRequest(DocumentSnapshot request) {
+        if (!"pending".equals(request.getString("status"))) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        Long requestTime = request.getLong("requestTime");
+        return DocumentExpiry.isExpired(request, now)
+                || (requestTime != null && now - requestTime > DocumentExpiry.PENDING_REQUEST_WINDOW);
+    }
+
+    private void showExpired() {
+        messageText.setText("This request has expired. Ask " + (requesterName != null ? requesterName : "them")
+                + " to send a new one if they still need access.");
+        expired = true;
+        allowButton.setEnabled(false);
+    }
+
     private void displayRequestInfo(String requestType) {
         boolean isUnrestrictRequest = "UNRESTRICT_APP".equals(requestType);
 
@@ -182,78 +207,107 @@ public class PartnerApprovalActivity extends AppCompatActivity {
             response.put("accessExpiresAt", System.currentTimeMillis() + (totalSeconds * 1000));
         }
 
-        db.collection("requests").document(requestId)
-                .update(response)
-                .addOnSuccessListener(aVoid -> {
-                    // Check if this is an unrestrict request or access request
-                    db.collection("requests").document(requestId).get()
-                            .addOnSuccessListener(documentSnapshot -> {
-                                String requestType = documentSnapshot.getString("requestType");
-
-                                // Create wallet-based temporary access if approved and it's a regular access request
-                                if (approved && !"UNRESTRICT_APP".equals(requestType) && totalSeconds > 0) {
-                                    String userId = documentSnapshot.getString("userId");
-                                    String packageName = documentSnapshot.getString("packageName");
-
-                                    if (userId != null && packageName != null) {
-                                        createWalletBasedAccess(userId, packageName, totalSeconds * 1000L); // Convert to milliseconds
-                                    }
-                                }
-                                boolean isUnrestrictRequest = "UNRESTRICT_APP".equals(requestType);
-
-                                // Request processed
-                                String message;
-                                if (approved) {
-                                    if (isUnrestrictRequest) {
-                                        message = String.format("Approved removing %s from restrictions for %s", appName, requesterName);
-                                    } else if (totalSeconds > 0) {
-                                        String timeDescription = formatTimeDescription(totalSeconds);
-                                        message = String.format("Granted %s access to %s for %s", requesterName, appName, timeDescription);
-                                    } else {
-                                        message = String.format("Granted %s access to %s", requesterName, appName);
-                                    }
-                                } else {
-                                    if (isUnrestrictRequest) {
-                                        message = String.format("Denied removing %s from restrictions for %s", appName, requesterName);
-                                    } else {
-                                        message = String.format("Denied %s access to %s", requesterName, appName);
-                                    }
-                                }
-
-                                Toast.makeText(this, message, Toast.LENGTH_LONG).show();
-                                // Response sent
-
-                                // Close the activity
-                                finish();
-                            });
+        // The status update and the wallet grant commit together, in one transaction that reads the request on
+        // the server: a request already decided on another device is left alone, so an approval never grants
+        // time twice and a late deny never overrides an approval
+        long approveStartedAt = SystemClock.elapsedRealtime();
+        DocumentReference requestRef = db.collection("requests").document(requestId);
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot request = transaction.get(requestRef);
+                    if (!request.exists() || !"pending".equals(request.getString("status"))) {
+                        return request;
+                    }
+                    transaction.update(requestRef, response);
+                    DocumentReference walletRef = walletGrantFor(request, approved, totalSeconds);
+                    if (walletRef != null) {
+                        transaction.set(walletRef, walletData(request, totalSeconds * 1000L)); // Convert to milliseconds
+                    }
+                    return request;
+                })
+                .addOnSuccessListener(request -> {
+                    if (!request.exists()) {
+                        onAlreadyDecided("This request no longer exists");
+                    } else if (!"pending".equals(request.getString("status"))) {
+                        onAlreadyDecided("This request was already " + request.getString("status"));
+                    } else {
+                        onApprovalCommitted(approved, request.getString("requestType"), totalSeconds, approveStartedAt);
+                    }
                 })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to update access request", e);
-                    Toast.makeText(this, "Failed to process request. Please try again.", Toast.LENGTH_SHORT).show();
-
-                    // Re-enable buttons
-                    allowButton.setEnabled(true);
-                    denyButton.setEnabled(true);
-                });
+                .addOnFailureListener(this::onApprovalFailed);
     }
 
-    private void createWalletBasedAccess(String userId, String packageName, long remainingMillis) {
-        Log.d(TAG, "Creating wallet-based access for " + packageName + " with " + remainingMillis + "ms remaining");
+    // Wallet-based temporary access document to create, or null when the decision grants no time
+    private DocumentReference walletGrantFor(DocumentSnapshot request, boolean approved, long totalSeconds) {
+        if (!approved || "UNRESTRICT_APP".equals(request.getString("requestType")) || totalSeconds <= 0) {
+            return null;
+        }
+        String userId = request.getString("userId");
+        String packageName = requestPackage(request);
+        if (userId == null || packageName == null) {
+            return null;
+        }
+        return db.collection("users").document(userId)
+                .collection("temporaryAccess").document(packageName);
+    }
 
+    private Map<String, Object> walletData(DocumentSnapshot request, long remainingMillis) {
         Map<String, Object> accessData = new HashMap<>();
         accessData.put("remainingMillis", remainingMillis);
         accessData.put("grantedAt", System.currentTimeMillis());
-        accessData.put("packageName", packageName);
+        accessData.put("packageName", requestPackage(request));
+        return accessData;
+    }
 
-        db.collection("users").document(userId)
-                .collection("temporaryAccess").document(packageName)
-                .set(accessData)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Wallet-based temporary access created for " + packageName);
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to create wallet-based temporary access for " + packageName, e);
-                });
+    // AccessRequest stores the package as appPackage; older request documents used packageName
+    private String requestPackage(DocumentSnapshot request) {
+        String packageName = request.getString("appPackage");
+        return packageName != null ? packageName : request.getString("packageName");
+    }
+
+    private void onApprovalCommitted(boolean approved, String requestType, long totalSeconds, long approveStartedAt) {
+        // Approve-to-unlock latency: the helpee's temporaryAccess listener fires as soon as this commit lands
+        Log.d(TAG, "Decision committed in " + (SystemClock.elapsedRealtime() - approveStartedAt) + " ms");
+
+        boolean isUnrestrictRequest = "UNRESTRICT_APP".equals(requestType);
+
+        // Request processed
+        String message;
+        if (approved) {
+            if (isUnrestrictRequest) {
+                message = String.format("Approved removing %s from restrictions for %s", appName, requesterName);
+            } else if (totalSeconds > 0) {
+                String timeDescription = formatTimeDescription(totalSeconds);
+                message = String.format("Granted %s access to %s for %s", requesterName, appName, timeDescription);
+            } else {
+                message = String.format("Granted %s access to %s", requesterName, appName);
+            }
+        } else {
+            if (isUnrestrictRequest) {
+                message = String.format("Denied removing %s from restrictions for %s", appName, requesterName);
+            } else {
+                message = String.format("Denied %s access to %s", requesterName, appName);
+            }
+        }
+
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        // Response sent
+
+        // Close the activity
+        finish();
+    }
+
+    private void onAlreadyDecided(String message) {
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        finish();
+    }
+
+    private void onApprovalFailed(Exception e) {
+        Log.e(TAG, "Failed to update access request", e);
+        Toast.makeText(this, "Failed to process request. Please try again.", Toast.LENGTH_SHORT).show();
+
+        // Re-enable buttons; an expired request can still be denied but never allowed
+        allowButton.setEnabled(!expired);
+        denyButton.setEnabled(true);
     }
 
     @Override
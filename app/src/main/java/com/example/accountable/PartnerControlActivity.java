@@ -1,13 +1,26 @@
 package com.example.accountable;
 
+import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.InputFilter;
+import android.text.InputType;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,6 +28,8 @@ import java.util.Map;
 
 public class PartnerControlActivity extends AppCompatActivity {
 
+    private static final long LIMIT_SAVE_DELAY = 1500L;
+
     private FirebaseFirestore db;
     private String partnerId;
     private String partnerEmail;
@@ -24,6 +39,18 @@ public class PartnerControlActivity extends AppCompatActivity {
     private TextView headerText;
     private AppLimitAdapter adapter;
     private List<AppLimitInfo> appsList = new ArrayList<>();
+    private Map<String, AppLimitInfo> appsByPackage = new HashMap<>();
+    private Map<String, Long> storedLimits;
+    private ListenerRegistration limitsListener;
+
+    // Limit edits not yet written, saved together once editing pauses or the screen is left
+    private final Map<String, Integer> pendingLimits = new HashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable limitSaver = this::flushPendingLimits;
+
+    private List<String> blockedDomains = new ArrayList<>();
+    private List<String> blockedSections = new ArrayList<>();
+    private Map<String, Object> autoGrantAllowances = new HashMap<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -45,6 +72,17 @@ public class PartnerControlActivity extends AppCompatActivity {
         setupToolbar();
         initViews();
         loadPartnerApps();
+        checkMonitoringHeartbeat();
+        // Cache the unlock code secret so codes can be generated later without a connection
+        UnlockCodes.syncSecret(this, db, partnerId, null);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (limitsListener != null) {
+            limitsListener.remove();
+        }
     }
 
     private void setupToolbar() {
@@ -69,11 +107,18 @@ public class PartnerControlActivity extends AppCompatActivity {
     }
 
     private void loadPartnerApps() {
-        // Get the partner's selected apps
-        db.collection("users").document(partnerId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
+        // Get the partner's selected apps - the cached copy renders first, the server copy follows if it differs
+        CacheFirstReader.get("PartnerControl.partnerApps", db.collection("users").document(partnerId),
+                (documentSnapshot, fromCache) -> {
+                    showFreshness(fromCache);
                     if (documentSnapshot.exists()) {
+                        List<String> domains = (List<String>) documentSnapshot.get("blockedDomains");
+                        blockedDomains = domains != null ? new ArrayList<>(domains) : new ArrayList<>();
+                        List<String> sections = (List<String>) documentSnapshot.get("blockedSections");
+                        blockedSections = sections != null ? new ArrayList<>(sections) : new ArrayList<>();
+                        Map<String, Object> allowances = (Map<String, Object>) documentSnapshot.get("autoGrantAllowances");
+                        autoGrantAllowances = allowances != null ? new HashMap<>(allowances) : new HashMap<>();
+
                         List<String> selectedApps = (List<String>) documentSnapshot.get("selectedApps");
                         if (selectedApps != null && !selectedApps.isEmpty()) {
                             loadAppDetails(selectedApps);
@@ -83,15 +128,53 @@ public class PartnerControlActivity extends AppCompatActivity {
                     } else {
                         showEmptyState();
                     }
-                })
-                .addOnFailureListener(e -> {
+                },
+                freshnessListener,
+                e -> {
                     Toast.makeText(this, "Failed to load partner's apps: " + e.getMessage(),
                                  Toast.LENGTH_LONG).show();
                 });
     }
 
+    private final CacheFirstReader.FreshnessListener freshnessListener = new CacheFirstReader.FreshnessListener() {
+        @Override
+        public void onFresh() {
+            showFreshness(false);
+        }
+
+        @Override
+        public void onStale(Exception e) {
+            if (getSupportActionBar() != null) {
+                getSupportActionBar().setSubtitle("Offline - showing saved data");
+            }
+        }
+    };
+
+    private void showFreshness(boolean fromCache) {
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setSubtitle(fromCache ? "Saved data - checking for updates" : null);
+        }
+    }
+
+    private void checkMonitoringHeartbeat() {
+        db.collection(TamperDetectionService.COLLECTION).document(partnerId)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    String problem = TamperDetectionService.describeProblem(
+                            documentSnapshot.exists() ? documentSnapshot.getData() : null,
+                            System.currentTimeMillis());
+                    if (problem != null) {
+                        headerText.append("\n\n⚠️ " + problem + " on " + partnerName + "'s phone.");
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    // Heartbeat is advisory - limits can still be managed without it
+                });
+    }
+
     private void loadAppDetails(List<String> packageNames) {
         appsList.clear();
+        appsByPackage.clear();
 
         for (String packageName : packageNames) {
             try {
@@ -103,8 +186,10 @@ public class PartnerControlActivity extends AppCompatActivity {
                 appInfo.packageName = packageName;
                 appInfo.appName = appName;
                 appInfo.dailyLimitMinutes = 0; // Default to 0 minutes (blocked)
+                appInfo.savedLimitMinutes = 0;
 
                 appsList.add(appInfo);
+                appsByPackage.put(packageName, appInfo);
             } catch (Exception e) {
                 // App not found, skip it
             }
@@ -115,30 +200,49 @@ public class PartnerControlActivity extends AppCompatActivity {
     }
 
     private void loadStoredLimits() {
-        // Load existing limits from Firestore
-        db.collection("appLimits")
-                .whereEqualTo("partnerId", partnerId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    for (com.google.firebase.firestore.QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        String packageName = doc.getString("packageName");
-                        Long limitMinutes = doc.getLong("dailyLimitMinutes");
-
-                        // Update the app in our list
-                        for (AppLimitInfo app : appsList) {
-                            if (app.packageName.equals(packageName)) {
-                                app.dailyLimitMinutes = limitMinutes != null ? limitMinutes.intValue() : 0;
-                                break;
-                            }
-                        }
+        if (storedLimits != null) {
+            // The app list was rebuilt; the listener already has the current limits
+            applyStoredLimits();
+            return;
+        }
+        if (limitsListener != null) {
+            return;
+        }
+        // All of the partner's limits live in one document - one read, then one listener for later edits
+        limitsListener = LimitsStore.documentFor(db, partnerId)
+                .addSnapshotListener((documentSnapshot, e) -> {
+                    if (e != null) {
+                        Toast.makeText(this, "Failed to load existing limits", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    if (documentSnapshot == null) {
+                        return;
+                    }
+                    boolean fromCache = documentSnapshot.getMetadata().isFromCache();
+                    showFreshness(fromCache);
+                    storedLimits = LimitsStore.read(documentSnapshot);
+                    applyStoredLimits();
+                    if (!fromCache) {
+                        LimitsStore.migrateIfNeeded(db, partnerId, documentSnapshot);
                     }
-                    adapter.notifyDataSetChanged();
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Failed to load existing limits", Toast.LENGTH_SHORT).show();
                 });
     }
 
+    private void applyStoredLimits() {
+        // Hash lookup per stored limit instead of scanning the app list for each one. Rows with unsaved
+        // edits keep the partner's value, and only rows whose value changed are rebound.
+        for (Map.Entry<String, Long> entry : storedLimits.entrySet()) {
+            AppLimitInfo app = appsByPackage.get(entry.getKey());
+            if (app == null) {
+                continue;
+            }
+            app.savedLimitMinutes = entry.getValue().intValue();
+            if (!pendingLimits.containsKey(entry.getKey())) {
+                setAppLimit(app, app.savedLimitMinutes);
+            }
+        }
+    }
+
     private int getStoredLimit(String packageName) {
         // Default 0 minutes (blocked) - will be updated when we load from Firestore
         return 0;
@@ -154,29 +258,257 @@ public class PartnerControlActivity extends AppCompatActivity {
     }
 
     private void onLimitChanged(AppLimitInfo app, int newLimitMinutes) {
-        // Save the new limit to Firestore
-        Map<String, Object> limitData = new HashMap<>();
-        limitData.put("partnerId", partnerId);
-        limitData.put("packageName", app.packageName);
-        limitData.put("appName", app.appName);
-        limitData.put("dailyLimitMinutes", newLimitMinutes);
-        limitData.put("updatedAt", System.currentTimeMillis());
-
-        // Use partnerId_packageName as document ID for easy updates
-        String docId = partnerId + "_" + app.packageName.replace(".", "_");
-
-        db.collection("appLimits").document(docId)
-                .set(limitData)
+        // The row already shows the new value; the save waits until editing pauses
+        pendingLimits.put(app.packageName, newLimitMinutes);
+        handler.removeCallbacks(limitSaver);
+        handler.postDelayed(limitSaver, LIMIT_SAVE_DELAY);
+    }
+
+    private void flushPendingLimits() {
+        handler.removeCallbacks(limitSaver);
+        if (pendingLimits.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> saving = new HashMap<>(pendingLimits);
+        pendingLimits.clear();
+        // What each row held before these edits, taken before the write's local echo updates it
+        Map<String, Integer> previous = new HashMap<>();
+        for (String packageName : saving.keySet()) {
+            AppLimitInfo app = appsByPackage.get(packageName);
+            if (app != null) {
+                previous.put(packageName, app.savedLimitMinutes);
+            }
+        }
+
+        // Every limit edited since the last save goes out in one write to the limits document
+        LimitsStore.setLimits(db, partnerId, new HashMap<String, Object>(saving))
                 .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(this, app.appName + " limit set to " + newLimitMinutes + " minutes",
-                                 Toast.LENGTH_SHORT).show();
+                    for (Map.Entry<String, Integer> entry : saving.entrySet()) {
+                        AppLimitInfo app = appsByPackage.get(entry.getKey());
+                        if (app != null) {
+                            app.savedLimitMinutes = entry.getValue();
+                        }
+                    }
+                    if (isFinishing()) {
+                        return;
+                    }
+                    if (saving.size() == 1) {
+                        Map.Entry<String, Integer> entry = saving.entrySet().iterator().next();
+                        AppLimitInfo app = appsByPackage.get(entry.getKey());
+                        String name = app != null ? app.appName : entry.getKey();
+                        Toast.makeText(this, name + " limit set to " + entry.getValue() + " minutes",
+                                     Toast.LENGTH_SHORT).show();
+                    } else {
+                        Toast.makeText(this, saving.size() + " limits saved", Toast.LENGTH_SHORT).show();
+                    }
                 })
                 .addOnFailureListener(e -> {
+                    // Saved from onPause, the screen may already be gone
+                    if (isFinishing()) {
+                        return;
+                    }
+                    // Roll back the optimistic values that were not edited again in the meantime
+                    for (Map.Entry<String, Integer> entry : previous.entrySet()) {
+                        AppLimitInfo app = appsByPackage.get(entry.getKey());
+                        if (app != null && !pendingLimits.containsKey(entry.getKey())) {
+                            app.savedLimitMinutes = entry.getValue();
+                            setAppLimit(app, entry.getValue());
+                        }
+                    }
                     Toast.makeText(this, "Failed to save limit: " + e.getMessage(),
                                  Toast.LENGTH_SHORT).show();
                 });
     }
 
+    private void setAppLimit(AppLimitInfo app, int minutes) {
+        if (app.dailyLimitMinutes != minutes) {
+            app.dailyLimitMinutes = minutes;
+            adapter.notifyItemChanged(appsList.indexOf(app));
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Leaving the screen saves whatever is still waiting
+        flushPendingLimits();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_partner_control, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_blocked_websites) {
+            showBlockedWebsitesDialog();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_blocked_sections) {
+            showBlockedSectionsDialog();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_auto_grant) {
+            showAutoGrantDialog();
+            return true;
+        }
+        if (item.getItemId() == R.id.action_unlock_code) {
+            Intent intent = new Intent(this, FriendControlActivity.class);
+            intent.putExtra("helpeeId", partnerId);
+            intent.putExtra("helpeeName", partnerName);
+            startActivity(intent);
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showBlockedWebsitesDialog() {
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE
+                | InputType.TYPE_TEXT_VARIATION_URI);
+        input.setMinLines(4);
+        input.setHint("One website per line, e.g. youtube.com");
+        input.setText(android.text.TextUtils.join("\n", blockedDomains));
+
+        new AlertDialog.Builder(this)
+                .setTitle("Blocked websites for " + partnerName)
+                .setView(input)
+                .setPositiveButton("Save", (dialog, which) -> saveBlockedDomains(input.getText().toString()))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void saveBlockedDomains(String text) {
+        List<String> domains = new ArrayList<>();
+        for (String line : text.split("[\\s,]+")) {
+            String domain = DomainMatcher.normalizeDomain(line);
+            if (domain != null && !domains.contains(domain)) {
+                domains.add(domain);
+            }
+        }
+
+        db.collection("users").document(partnerId)
+                .update("blockedDomains", domains)
+                .addOnSuccessListener(aVoid -> {
+                    blockedDomains = domains;
+                    Toast.makeText(this, domains.size() + " websites blocked for " + partnerName,
+                                 Toast.LENGTH_SHORT).show();
+                })
+                .addOnFailureListener(e -> {
+                    Toast.makeText(this, "Failed to save websites: " + e.getMessage(),
+                                 Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    private void showBlockedSectionsDialog() {
+        List<SectionMatcher.Section> sections = SectionMatcher.SECTIONS;
+        String[] labels = new String[sections.size()];
+        boolean[] checked = new boolean[sections.size()];
+        for (int i = 0; i < sections.size(); i++) {
+            labels[i] = sections.get(i).label;
+            checked[i] = blockedSections.contains(sections.get(i).key);
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Blocked sections for " + partnerName)
+                .setMultiChoiceItems(labels, checked, (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    List<String> keys = new ArrayList<>();
+                    for (int i = 0; i < sections.size(); i++) {
+                        if (checked[i]) {
+                            keys.add(sections.get(i).key);
+                        }
+                    }
+                    saveBlockedSections(keys);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void saveBlockedSections(List<String> keys) {
+        db.collection("users").document(partnerId)
+                .update("blockedSections", keys)
+                .addOnSuccessListener(aVoid -> {
+                    blockedSections = keys;
+                    Toast.makeText(this, "Blocked sections updated for " + partnerName,
+                                 Toast.LENGTH_SHORT).show();
+                })
+                .addOnFailureListener(e -> {
+                    Toast.makeText(this, "Failed to save sections: " + e.getMessage(),
+                                 Toast.LENGTH_SHORT).show();
+                });
+    }
+
+    private void showAutoGrantDialog() {
+        if (appsList.isEmpty()) {
+            Toast.makeText(this, partnerName + " has no restricted apps yet", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] labels = new String[appsList.size()];
+        for (int i = 0; i < appsList.size(); i++) {
+            AppLimitInfo app = appsList.get(i);
+            Object minutes = autoGrantAllowances.get(app.packageName);
+            labels[i] = app.appName + (minutes instanceof Number ? " (" + minutes + " min/day)" : "");
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Auto-grant allowances for " + partnerName)
+                .setItems(labels, (dialog, which) -> showAllowanceMinutesDialog(appsList.get(which)))
+                .setNegativeButton("Close", null)
+                .show();
+    }
+
+    private void showAllowanceMinutesDialog(AppLimitInfo app) {
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_NUMBER);
+        // A day has 1440 minutes, so four digits always parse
+        input.setFilters(new InputFilter[]{new InputFilter.LengthFilter(4)});
+        input.setHint("Minutes per day (0 to always ask)");
+        Object current = autoGrantAllowances.get(app.packageName);
+        if (current instanceof Number) {
+            input.setText(String.valueOf(current));
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle(app.appName)
+                .setMessage(partnerName + " can unlock up to this many minutes a day without asking you.")
+                .setView(input)
+                .setPositiveButton("Save", (dialog, which) -> {
+                    String text = input.getText().toString().trim();
+                    long minutes = text.isEmpty() ? 0 : Long.parseLong(text);
+                    if (minutes > 24 * 60) {
+                        Toast.makeText(this, "An allowance can't be more than 1440 minutes a day", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    saveAutoGrantAllowance(app, minutes);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void saveAutoGrantAllowance(AppLimitInfo app, long minutes) {
+        Object value = minutes > 0 ? (Object) minutes : FieldValue.delete();
+        db.collection("users").document(partnerId)
+                .update(FieldPath.of("autoGrantAllowances", app.packageName), value)
+                .addOnSuccessListener(aVoid -> {
+                    if (minutes > 0) {
+                        autoGrantAllowances.put(app.packageName, minutes);
+                    } else {
+                        autoGrantAllowances.remove(app.packageName);
+                    }
+                    Toast.makeText(this, minutes > 0
+                                    ? app.appName + ": " + minutes + " min/day without asking"
+                                    : app.appName + ": every unlock needs your approval",
+                                 Toast.LENGTH_SHORT).show();
+                })
+                .addOnFailureListener(e -> {
+                    Toast.makeText(this, "Failed to save allowance: " + e.getMessage(),
+                                 Toast.LENGTH_SHORT).show();
+                });
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
@@ -188,5 +520,7 @@ public class PartnerControlActivity extends AppCompatActivity {
         public String packageName;
         public String appName;
         public int dailyLimitMinutes = 15; // Default 15 minutes
+        // Last value known to be in the limits document; a failed save puts the row back to it
+        public int savedLimitMinutes = 15;
     }
 }
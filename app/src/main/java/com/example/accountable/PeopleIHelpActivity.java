@@ -12,8 +12,10 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -28,6 +30,7 @@ public class PeopleIHelpActivity extends AppCompatActivity {
     private TextView emptyStateText;
     private PartnerControlAdapter adapter;
     private List<PartnerInfo> partnersList = new ArrayList<>();
+    private ListenerRegistration helpeesListener;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -68,39 +71,65 @@ public class PeopleIHelpActivity extends AppCompatActivity {
     }
 
     private void loadPeopleIHelp() {
-        partnersList.clear();
-
-        // Use the same query as the working debug button
-        db.collection("users")
-                .whereEqualTo("mainPartnerId", currentUserId)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                        PartnerInfo partner = new PartnerInfo();
-                        partner.userId = doc.getId();
-                        partner.email = doc.getString("email");
-                        partner.displayName = doc.getString("displayName");
-
-                        // Use the old fallback logic that was working
-                        if (partner.displayName == null || partner.displayName.trim().isEmpty()) {
-                            if (partner.email != null && !partner.email.trim().isEmpty()) {
-                                partner.displayName = partner.email.split("@")[0];
-                            } else {
-                                partner.displayName = "User-" + partner.userId.substring(0, 6);
-                            }
-                        }
-                        if (partner.email == null) {
-                            partner.email = "No email in database";
+        HelpeesIndex.backfill(this, db, currentUserId);
+
+        // Live view of the helpees index: the cached copy renders first and each change touches only its row
+        helpeesListener = HelpeesIndex.of(db, currentUserId)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        Log.e("PeopleIHelp", "Helpees listener failed", e);
+                        updateUI();
+                        return;
+                    }
+                    if (snapshots == null) {
+                        return;
+                    }
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        switch (change.getType()) {
+                            case ADDED:
+                                partnersList.add(change.getNewIndex(), toPartnerInfo(change.getDocument()));
+                                adapter.notifyItemInserted(change.getNewIndex());
+                                break;
+                            case MODIFIED:
+                                if (change.getOldIndex() == change.getNewIndex()) {
+                                    partnersList.set(change.getNewIndex(), toPartnerInfo(change.getDocument()));
+                                    adapter.notifyItemChanged(change.getNewIndex());
+                                } else {
+                                    partnersList.remove(change.getOldIndex());
+                                    partnersList.add(change.getNewIndex(), toPartnerInfo(change.getDocument()));
+                                    adapter.notifyItemMoved(change.getOldIndex(), change.getNewIndex());
+                                    adapter.notifyItemChanged(change.getNewIndex());
+                                }
+                                break;
+                            case REMOVED:
+                                partnersList.remove(change.getOldIndex());
+                                adapter.notifyItemRemoved(change.getOldIndex());
+                                break;
                         }
-
-                        partnersList.add(partner);
                     }
-
                     updateUI();
-                })
-                .addOnFailureListener(e -> updateUI());
+                });
     }
 
+    private PartnerInfo toPartnerInfo(DocumentSnapshot doc) {
+        PartnerInfo partner = new PartnerInfo();
+        partner.userId = doc.getId();
+        partner.email = doc.getString("email");
+        partner.displayName = doc.getString("displayName");
+
+        // Use the old fallback logic that was working
+        if (partner.displayName == null || partner.displayName.trim().isEmpty()) {
+            if (partner.email != null && !partner.email.trim().isEmpty()) {
+                partner.displayName = partner.email.split("@")[0];
+            } else {
+                partner.displayName = "User-" + partner.userId.substring(0, 6);
+            }
+        }
+        if (partner.email == null) {
+            partner.email = "No email in database";
+        }
+        return partner;
+    }
 
     private void updateUI() {
         if (partnersList.isEmpty()) {
@@ -120,11 +149,6 @@ public class PeopleIHelpActivity extends AppCompatActivity {
             if (emptyStateText != null) {
                 emptyStateText.setVisibility(android.view.View.GONE);
             }
-
-            // Update adapter
-            if (adapter != null) {
-                adapter.notifyDataSetChanged();
-            }
         }
     }
 
@@ -136,6 +160,14 @@ public class PeopleIHelpActivity extends AppCompatActivity {
         startActivity(intent);
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (helpeesListener != null) {
+            helpeesListener.remove();
+        }
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
@@ -0,0 +1,216 @@
+package com.example.accountable;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Log;
+import androidx.core.app.NotificationCompat;
+import com.google.firebase.Timestamp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Partner-side inbox for access and unrestrict requests.
+// Every request has exactly one notification document, users/{recipientId}/inbox/{requestId}. One listener
+// per process reads this device's own inbox in server-timestamp order (sentAt, never a device clock),
+// starting after a locally persisted cursor, so a reconnect never downloads items already delivered. Every delivery path (that listener and FCM data
+// messages) goes through deliver(), which drops request IDs already shown - one request, one system notification.
+public final class RequestInbox {
+
+    private static final String TAG = "RequestInbox";
+    public static final String COLLECTION = "inbox";
+    private static final String CHANNEL_ID = "access_requests";
+    private static final String PREFS_NAME = "request_inbox";
+    private static final String KEY_DELIVERED = "delivered";
+    private static final String FIELD_SENT_AT = "sentAt";
+    private static final String KEY_CURSOR_SECONDS = "cursor_seconds_";
+    private static final String KEY_CURSOR_NANOS = "cursor_nanos_";
+    private static final String KEY_CURSOR_ID = "cursor_id_";
+    private static final int MAX_REMEMBERED = 100;
+
+    private static ListenerRegistration registration;
+    private static String listeningUserId;
+
+    private RequestInbox() {
+    }
+
+    public static CollectionReference inboxOf(FirebaseFirestore db, String userId) {
+        return db.collection("users").document(userId).collection(COLLECTION);
+    }
+
+    // The request's single notification document; the requestId as document ID makes retries idempotent
+    public static DocumentReference documentFor(FirebaseFirestore db, String recipientId, String requestId) {
+        return inboxOf(db, recipientId).document(requestId);
+    }
+
+    public static Map<String, Object> buildNotification(String recipientId, String requestId, String userName,
+                                                        String appName, long requestedSeconds, String type, String message) {
+        Map<String, Object> notificationData = new HashMap<>();
+        notificationData.put("recipientId", recipientId);
+        notificationData.put("requestId", requestId);
+        notificationData.put("userName", userName);
+        notificationData.put("appName", appName);
+        notificationData.put("requestedSeconds", requestedSeconds);
+        notificationData.put("message", message);
+        notificationData.put("type", type);
+        notificationData.put("timestamp", System.currentTimeMillis());
+        // Paging order; the sender's clock may be wrong, the server's is shared by everyone
+        notificationData.put(FIELD_SENT_AT, FieldValue.serverTimestamp());
+        notificationData.put("status", "pending");
+        notificationData.put(DocumentExpiry.FIELD, DocumentExpiry.expireAt(DocumentExpiry.PENDING_NOTIFICATION_LIFETIME));
+        return notificationData;
+    }
+
+    // Starts the inbox listener for the signed-in user. Safe to call repeatedly - from the messaging service,
+    // MainActivity and its health check - only one listener is ever registered.
+    public static synchronized void start(Context context) {
+        FirebaseUser currentUser = FirebaseAuth.getInstance().getCurrentUser();
+        if (currentUser == null) {
+            stop();
+            return;
+        }
+        String userId = currentUser.getUid();
+        if (registration != null && userId.equals(listeningUserId)) {
+            return;
+        }
+        stop();
+
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // The document ID breaks timestamp ties so items written at the same instant are not skipped
+        Query query = inboxOf(FirebaseFirestore.getInstance(), userId)
+                .orderBy(FIELD_SENT_AT)
+                .orderBy(FieldPath.documentId());
+        String cursorId = prefs.getString(KEY_CURSOR_ID + userId, null);
+        if (cursorId != null) {
+            Timestamp cursor = new Timestamp(prefs.getLong(KEY_CURSOR_SECONDS + userId, 0L),
+                    prefs.getInt(KEY_CURSOR_NANOS + userId, 0));
+            query = query.startAfter(cursor, cursorId);
+        }
+        // First run on this device reads the whole inbox: the expiry sweep keeps it short, expired items
+        // are skipped below and deliver() drops anything already shown
+
+        listeningUserId = userId;
+        registration = query
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Inbox listener failed", e);
+                        // The next start() call re-registers
+                        stop();
+                        return;
+                    }
+                    if (snapshots == null) {
+                        return;
+                    }
+                    DocumentSnapshot last = null;
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        if (change.getType() != DocumentChange.Type.ADDED) {
+                            continue;
+                        }
+                        DocumentSnapshot doc = change.getDocument();
+                        last = doc;
+                        if (DocumentExpiry.isExpired(doc, System.currentTimeMillis())) {
+                            // Left for the expiry sweep; nobody is waiting on it any more
+                            continue;
+                        }
+                        Long requestedSeconds = doc.getLong("requestedSeconds");
+                        deliver(appContext, doc.getString("requestId"), doc.getString("userName"),
+                                doc.getString("appName"), requestedSeconds != null ? requestedSeconds : 0L);
+                    }
+                    // Only items confirmed by the server move the cursor; a pending local write could still fail,
+                    // and its sentAt is still null until the server assigns it
+                    if (last != null && !snapshots.getMetadata().hasPendingWrites()) {
+                        Timestamp sentAt = last.getTimestamp(FIELD_SENT_AT);
+                        if (sentAt != null) {
+                            prefs.edit()
+                                    .putLong(KEY_CURSOR_SECONDS + userId, sentAt.getSeconds())
+                                    .putInt(KEY_CURSOR_NANOS + userId, sentAt.getNanoseconds())
+                                    .putString(KEY_CURSOR_ID + userId, last.getId())
+                                    .apply();
+                        }
+                    }
+                });
+    }
+
+    public static synchronized void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        listeningUserId = null;
+    }
+
+    // Shows the request's notification unless it was already shown; returns whether it was new
+    public static synchronized boolean deliver(Context context, String requestId, String userName,
+                                               String appName, long requestedSeconds) {
+        if (requestId == null || userName == null || appName == null) {
+            return false;
+        }
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String stored = prefs.getString(KEY_DELIVERED, "");
+        Set<String> delivered = new LinkedHashSet<>(stored.isEmpty() ? new ArrayList<>() : Arrays.asList(stored.split(",")));
+        if (!delivered.add(requestId)) {
+            Log.d(TAG, "Duplicate delivery dropped for request " + requestId);
+            return false;
+        }
+        List<String> recent = new ArrayList<>(delivered);
+        if (recent.size() > MAX_REMEMBERED) {
+            recent = recent.subList(recent.size() - MAX_REMEMBERED, recent.size());
+        }
+        prefs.edit().putString(KEY_DELIVERED, TextUtils.join(",", recent)).apply();
+
+        showNotification(context, requestId, userName, appName, requestedSeconds);
+        return true;
+    }
+
+    private static void showNotification(Context context, String requestId, String userName, String appName, long requestedSeconds) {
+        // Create intent for PartnerApprovalActivity
+        Intent intent = new Intent(context, PartnerApprovalActivity.class);
+        intent.putExtra("requestId", requestId);
+        intent.putExtra("requesterName", userName);
+        intent.putExtra("appName", appName);
+        intent.putExtra("requestTime", new java.text.SimpleDateFormat("HH:mm", java.util.Locale.getDefault()).format(new java.util.Date()));
+        intent.putExtra("requestedSeconds", requestedSeconds);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            requestId.hashCode(), // Use unique ID
+            intent,
+            PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE
+        );
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+            .setSmallIcon(android.R.drawable.ic_dialog_alert)
+            .setContentTitle("🔒 Access Request")
+            .setContentText(userName + " wants to access " + appName)
+            .setStyle(new NotificationCompat.BigTextStyle()
+                .bigText(userName + " is requesting access to " + appName + ". Tap to approve or deny."))
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setCategory(NotificationCompat.CATEGORY_MESSAGE)
+            .setAutoCancel(true)
+            .setContentIntent(pendingIntent);
+
+        NotificationManager manager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // Keyed by request, so even a repeated post replaces rather than stacks
+        manager.notify(requestId.hashCode(), builder.build());
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.accountable;
+
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityNodeInfo;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Detects in-app sections (YouTube Shorts, Instagram Reels) from view-ID signatures.
+// Only the subtree that changed (the event source, a couple of levels down and a few ancestors up)
+// is inspected. Sources examined without a match are cached per window together with the ancestors
+// walked for them, so repeat events from the same source are answered without touching the node tree.
+// A structural change forgets only what it can affect: the source itself, the ancestors whose searched
+// subtree reaches it and the cached nodes below it. Its ancestors are not walked again, since a node's
+// ancestors keep their view IDs; a scrolling list therefore costs one shallow subtree walk per event.
+public class SectionMatcher {
+
+    private static final int MAX_SUBTREE_DEPTH = 2;
+    private static final int MAX_SUBTREE_NODES = 40;
+    private static final int MAX_ANCESTORS = 4;
+    private static final int MAX_CACHED_WINDOWS = 16;
+    private static final int MAX_EXAMINED_PER_WINDOW = 64;
+
+    public static final List<Section> SECTIONS = Collections.unmodifiableList(Arrays.asList(
+            new Section("youtube_shorts", "com.google.android.youtube", "YouTube Shorts",
+                    "com.google.android.youtube:id/reel_recycler",
+                    "com.google.android.youtube:id/reel_player_page_container",
+                    "com.google.android.youtube:id/reel_watch_player"),
+            new Section("instagram_reels", "com.instagram.android", "Instagram Reels",
+                    "com.instagram.android:id/clips_viewer_view_pager",
+                    "com.instagram.android:id/clips_viewer_container",
+                    "com.instagram.android:id/clips_video_container"),
+            new Section("facebook_reels", "com.facebook.katana", "Facebook Reels",
+                    "com.facebook.katana:id/reels_viewer_container")
+    ));
+
+    // Node access the matcher needs; every call except key() and recycle() is an IPC on a real tree
+    interface NodeTree<N> {
+        int key(N node);
+        String viewId(N node);
+        int childCount(N node);
+        N child(N node, int index);
+        N parent(N node);
+        void recycle(N node);
+    }
+
+    private static final NodeTree<AccessibilityNodeInfo> ACCESSIBILITY_NODES = new NodeTree<AccessibilityNodeInfo>() {
+        @Override
+        public int key(AccessibilityNodeInfo node) {
+            // Node identity (view and window), not its view ID: two containers may share an ID
+            return node.hashCode();
+        }
+
+        @Override
+        public String viewId(AccessibilityNodeInfo node) {
+            return node.getViewIdResourceName();
+        }
+
+        @Override
+        public int childCount(AccessibilityNodeInfo node) {
+            return node.getChildCount();
+        }
+
+        @Override
+        public AccessibilityNodeInfo child(AccessibilityNodeInfo node, int index) {
+            return node.getChild(index);
+        }
+
+        @Override
+        public AccessibilityNodeInfo parent(AccessibilityNodeInfo node) {
+            return node.getParent();
+        }
+
+        @Override
+        public void recycle(AccessibilityNodeInfo node) {
+            node.recycle();
+        }
+    };
+
+    // Active signatures grouped by package - replaced wholesale when the partner changes the list
+    private Map<String, List<Section>> activeByPackage = new HashMap<>();
+
+    // Per-window cache of sources already examined without a match
+    private final Map<Integer, WindowState> windowCache = new LinkedHashMap<Integer, WindowState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, WindowState> eldest) {
+            return size() > MAX_CACHED_WINDOWS;
+        }
+    };
+
+    public void setBlockedSections(List<String> keys) {
+        Map<String, List<Section>> active = new HashMap<>();
+        if (keys != null) {
+            for (Section section : SECTIONS) {
+                if (keys.contains(section.key)) {
+                    List<Section> sections = active.get(section.packageName);
+                    if (sections == null) {
+                        sections = new ArrayList<>();
+                        active.put(section.packageName, sections);
+                    }
+                    sections.add(section);
+                }
+            }
+        }
+        activeByPackage = active;
+        windowCache.clear();
+    }
+
+    public boolean isEmpty() {
+        return activeByPackage.isEmpty();
+    }
+
+    public Section match(AccessibilityEvent event) {
+        String packageName = event.getPackageName().toString();
+        if (!activeByPackage.containsKey(packageName)) {
+            return null;
+        }
+
+        int eventType = event.getEventType();
+        int windowId = event.getWindowId();
+        boolean structural;
+        if (eventType == AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED) {
+            windowCache.remove(windowId);
+            structural = true;
+        } else if (eventType == AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED) {
+            // Text and description updates never add a new section to the screen
+            int changes = event.getContentChangeTypes();
+            if (changes != AccessibilityEvent.CONTENT_CHANGE_TYPE_UNDEFINED
+                    && (changes & AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE) == 0) {
+                return null;
+            }
+            structural = (changes & AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE) != 0;
+        } else {
+            return null;
+        }
+
+        AccessibilityNodeInfo source = event.getSource();
+        if (source == null) {
+            return null;
+        }
+        return match(packageName, windowId, structural, source, ACCESSIBILITY_NODES);
+    }
+
+    // Takes ownership of source and recycles it
+    <N> Section match(String packageName, int windowId, boolean structural, N source, NodeTree<N> tree) {
+        List<Section> sections = activeByPackage.get(packageName);
+        if (sections == null) {
+            tree.recycle(source);
+            return null;
+        }
+        WindowState state = windowCache.get(windowId);
+        if (state == null) {
+            state = new WindowState();
+            windowCache.put(windowId, state);
+        }
+
+        int sourceKey = tree.key(source);
+        int[] ancestors = state.examined.get(sourceKey);
+        if (ancestors != null && !structural) {
+            tree.recycle(source);
+            return null;
+        }
+
+        Section found = findInSubtree(source, sections, tree);
+        if (found == null && ancestors == null) {
+            // First time this source is seen: its ancestors are checked once and remembered
+            List<Integer> walked = new ArrayList<>(MAX_ANCESTORS);
+            found = findInAncestors(source, sections, tree, walked);
+            ancestors = new int[walked.size()];
+            for (int i = 0; i < ancestors.length; i++) {
+                ancestors[i] = walked.get(i);
+            }
+        }
+        tree.recycle(source);
+
+        // A subtree match on a new source leaves ancestors unknown, but a match resets the window anyway
+        if (structural && ancestors != null) {
+            state.invalidate(sourceKey, ancestors);
+        }
+        if (found == null) {
+            state.remember(sourceKey, ancestors);
+        }
+        return found;
+    }
+
+    // Called whenever a match is reported, so the next event in the window is evaluated afresh
+    public void reset(int windowId) {
+        windowCache.remove(windowId);
+    }
+
+    private static <N> Section findInSubtree(N source, List<Section> sections, NodeTree<N> tree) {
+        Section found = sectionFor(source, sections, tree);
+        if (found != null) {
+            return found;
+        }
+
+        ArrayDeque<N> nodes = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        pushChildren(source, 1, nodes, depths, tree);
+        int visited = 0;
+        while (!nodes.isEmpty()) {
+            N node = nodes.pop();
+            int depth = depths.pop();
+            if (found == null && visited++ < MAX_SUBTREE_NODES) {
+                found = sectionFor(node, sections, tree);
+                if (found == null && depth < MAX_SUBTREE_DEPTH) {
+                    pushChildren(node, depth + 1, nodes, depths, tree);
+                }
+            }
+            tree.recycle(node);
+        }
+        return found;
+    }
+
+    // Adds the key of every ancestor checked without a match to walked
+    private static <N> Section findInAncestors(N source, List<Section> sections, NodeTree<N> tree,
+                                               List<Integer> walked) {
+        Section found = null;
+        N node = tree.parent(source);
+        for (int i = 0; i < MAX_ANCESTORS && node != null && found == null; i++) {
+            found = sectionFor(node, sections, tree);
+            N parent = null;
+            if (found == null) {
+                walked.add(tree.key(node));
+                parent = tree.parent(node);
+            }
+            tree.recycle(node);
+            node = parent;
+        }
+        if (node != null) {
+            tree.recycle(node);
+        }
+        return found;
+    }
+
+    private static <N> Section sectionFor(N node, List<Section> sections, NodeTree<N> tree) {
+        String viewId = tree.viewId(node);
+        if (viewId == null) {
+            return null;
+        }
+        for (Section section : sections) {
+            if (section.viewIds.contains(viewId)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    private static <N> void pushChildren(N node, int depth, ArrayDeque<N> nodes, ArrayDeque<Integer> depths,
+                                         NodeTree<N> tree) {
+        for (int i = tree.childCount(node) - 1; i >= 0; i--) {
+            N child = tree.child(node, i);
+            if (child != null) {
+                nodes.push(child);
+                depths.push(depth);
+            }
+        }
+    }
+
+    private static class WindowState {
+        // Source examined without a match -> keys of the ancestors checked with it, nearest first
+        final Map<Integer, int[]> examined = new HashMap<>();
+
+        void remember(int key, int[] ancestors) {
+            if (examined.size() >= MAX_EXAMINED_PER_WINDOW && !examined.containsKey(key)) {
+                examined.clear();
+            }
+            examined.put(key, ancestors);
+        }
+
+        // The subtree below key changed. Forget the conclusions that searched it: the node itself, the
+        // ancestors close enough for their subtree search to reach it, and cached nodes below it (a change
+        // deep in the tree may be reported on a common ancestor).
+        void invalidate(int key, int[] ancestors) {
+            examined.remove(key);
+            for (int i = 0; i < ancestors.length && i < MAX_SUBTREE_DEPTH; i++) {
+                examined.remove(ancestors[i]);
+            }
+            Iterator<int[]> entries = examined.values().iterator();
+            while (entries.hasNext()) {
+                for (int ancestor : entries.next()) {
+                    if (ancestor == key) {
+                        entries.remove();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    public static class Section {
+        public final String key;
+        public final String packageName;
+        public final String label;
+        public final Set<String> viewIds;
+
+        Section(String key, String packageName, String label, String... viewIds) {
+            this.key = key;
+            this.packageName = packageName;
+            this.label = label;
+            this.viewIds = new HashSet<>(Arrays.asList(viewIds));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Daily usage shared across a user's devices as a grow-only counter.
+// Each users/{uid}/usage/{day}_{pkg} document holds one slot per device; a device only ever raises its
+// own slot, so devices never contend on a field, and merging is a per-slot max followed by a sum, which
+// gives the same total whatever order or how many times snapshots arrive.
+public class SharedUsageCounter {
+
+    private static final String TAG = "SharedUsageCounter";
+    private static final String PREF_DEVICE_ID = "device_id";
+    private static final long FLUSH_INTERVAL = 60 * 1000L;
+
+    // Told when another device's usage (or our own restored slot) moves a package's combined total
+    public interface TotalsListener {
+        void onTotalChanged(String packageName);
+    }
+
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final String deviceId;
+
+    // This device's slot per package, and the sum of every other device's slot
+    private final Map<String, Long> localUsage = new ConcurrentHashMap<>();
+    private final Map<String, Long> otherDevicesUsage = new ConcurrentHashMap<>();
+    private final Set<String> dirtyPackages = new HashSet<>();
+
+    private String day = "";
+    // False until the server has told us this device's slots for the day; flushing waits for it
+    private boolean ownSlotsLoaded = false;
+    private ListenerRegistration usageListener;
+    private long lastFlushTime = 0L;
+    private TotalsListener totalsListener;
+
+    public SharedUsageCounter(Context context, FirebaseFirestore db, String userId, String prefsName) {
+        this(db, userId, loadDeviceId(context.getSharedPreferences(prefsName, Context.MODE_PRIVATE)));
+    }
+
+    SharedUsageCounter(FirebaseFirestore db, String userId, String deviceId) {
+        this.db = db;
+        this.userId = userId;
+        this.deviceId = deviceId;
+    }
+
+    public void setTotalsListener(TotalsListener listener) {
+        this.totalsListener = listener;
+    }
+
+    private static String loadDeviceId(SharedPreferences prefs) {
+        String id = prefs.getString(PREF_DEVICE_ID, null);
+        if (id == null) {
+            id = UUID.randomUUID().toString();
+            prefs.edit().putString(PREF_DEVICE_ID, id).apply();
+        }
+        return id;
+    }
+
+    // Switches to a new day: local slots start at zero and only that day's documents are merged
+    public void startDay(String newDay) {
+        if (newDay.equals(day)) {
+            return;
+        }
+        flush(true);
+        day = newDay;
+        localUsage.clear();
+        otherDevicesUsage.clear();
+        dirtyPackages.clear();
+        ownSlotsLoaded = false;
+
+        if (usageListener != null) {
+            usageListener.remove();
+        }
+        if (userId == null) {
+            return;
+        }
+        // Metadata changes are included so the cache-to-server transition is seen even when no data changed;
+        // without it a warm cache would never report a server snapshot and flushing would stay blocked
+        usageListener = db.collection("users").document(userId).collection("usage")
+                .whereEqualTo("day", newDay)
+                .addSnapshotListener(MetadataChanges.INCLUDE, (snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Failed to listen for shared usage", e);
+                        return;
+                    }
+                    if (snapshots == null || !newDay.equals(day)) {
+                        return;
+                    }
+                    Map<String, Map<String, Object>> slotsByPackage = new HashMap<>();
+                    for (DocumentSnapshot doc : snapshots.getDocuments()) {
+                        String packageName = doc.getString("packageName");
+                        Object slots = doc.get("slots");
+                        if (packageName != null && slots instanceof Map) {
+                            slotsByPackage.put(packageName, (Map<String, Object>) slots);
+                        }
+                    }
+                    Set<String> changed = applySnapshot(slotsByPackage, snapshots.getMetadata().isFromCache());
+                    if (totalsListener != null) {
+                        for (String packageName : changed) {
+                            totalsListener.onTotalChanged(packageName);
+                        }
+                    }
+                });
+    }
+
+    // Merges one snapshot of the day's usage documents and returns the packages whose combined total moved.
+    // The first server snapshot carries what this device wrote before a restart; usage counted since then is
+    // added on top of it rather than compared with it. Every later snapshot is a per-slot max, so replaying
+    // one changes nothing.
+    Set<String> applySnapshot(Map<String, Map<String, Object>> slotsByPackage, boolean fromCache) {
+        boolean firstFromServer = !ownSlotsLoaded && !fromCache;
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, Map<String, Object>> entry : slotsByPackage.entrySet()) {
+            String packageName = entry.getKey();
+            long before = get(packageName);
+            mergeSlots(packageName, entry.getValue(), firstFromServer);
+            if (get(packageName) != before) {
+                changed.add(packageName);
+            }
+        }
+        if (firstFromServer) {
+            ownSlotsLoaded = true;
+        }
+        return changed;
+    }
+
+    private void mergeSlots(String packageName, Map<String, Object> slots, boolean restoreOwnSlot) {
+        long others = 0L;
+        for (Map.Entry<String, Object> slot : slots.entrySet()) {
+            if (!(slot.getValue() instanceof Number)) {
+                continue;
+            }
+            long value = ((Number) slot.getValue()).longValue();
+            if (slot.getKey().equals(deviceId)) {
+                // Our own slot survives a process restart through the server copy. Cached copies seen
+                // before that are ignored, or the server copy would be counted twice.
+                long local = localUsage.getOrDefault(packageName, 0L);
+                if (restoreOwnSlot) {
+                    localUsage.put(packageName, value + local);
+                } else if (ownSlotsLoaded && value > local) {
+                    localUsage.put(packageName, value);
+                }
+            } else {
+                others += value;
+            }
+        }
+        otherDevicesUsage.put(packageName, others);
+    }
+
+    public void add(String packageName, long millis) {
+        localUsage.put(packageName, localUsage.getOrDefault(packageName, 0L) + millis);
+        dirtyPackages.add(packageName);
+    }
+
+    // Combined usage across all of the user's devices
+    public long get(String packageName) {
+        return localUsage.getOrDefault(packageName, 0L) + otherDevicesUsage.getOrDefault(packageName, 0L);
+    }
+
+    // Writes this device's slots for every package used since the last flush, in one batch. Nothing is
+    // written before the day's own slots are loaded: a slot is an absolute value, and writing a fresh
+    // process's count could lower the one already on the server.
+    public void flush(boolean force) {
+        long now = System.currentTimeMillis();
+        if (userId == null || day.isEmpty() || !ownSlotsLoaded || dirtyPackages.isEmpty()
+                || (!force && now - lastFlushTime < FLUSH_INTERVAL)) {
+            return;
+        }
+        lastFlushTime = now;
+
+        WriteBatch batch = db.batch();
+        for (String packageName : dirtyPackages) {
+            Map<String, Object> slots = new HashMap<>();
+            slots.put(deviceId, localUsage.getOrDefault(packageName, 0L));
+            Map<String, Object> counter = new HashMap<>();
+            counter.put("packageName", packageName);
+            counter.put("day", day);
+            counter.put("slots", slots);
+            batch.set(db.collection("users").document(userId).collection("usage").document(day + "_" + packageName),
+                    counter, SetOptions.merge());
+        }
+        Set<String> flushed = new HashSet<>(dirtyPackages);
+        dirtyPackages.clear();
+        batch.commit()
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Flushed usage for " + flushed.size() + " apps"))
+                .addOnFailureListener(e -> {
+                    // Slots hold absolute values, so the next flush simply rewrites them
+                    Log.e(TAG, "Failed to flush usage", e);
+                    dirtyPackages.addAll(flushed);
+                });
+    }
+
+    public void stop() {
+        flush(true);
+        if (usageListener != null) {
+            usageListener.remove();
+            usageListener = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.accountable;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.telecom.TelecomManager;
+import android.util.Log;
+import android.view.inputmethod.InputMethodInfo;
+import android.view.inputmethod.InputMethodManager;
+import androidx.core.content.ContextCompat;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Packages the monitor should never charge usage to or treat as an app switch: system components
+// without a launcher entry, every home app, enabled keyboards and the dialer. Built once from
+// PackageManager and rebuilt only when packages or keyboards change, so the per-event check is a single
+// hash lookup on the precomputed set. No broadcast tells a third-party app that the default dialer
+// changed, so it is re-read on each package change and when the screen turns on, and a different answer
+// triggers a rebuild.
+public class SystemAppClassifier {
+
+    private static final String TAG = "SystemAppClassifier";
+    private static final long REFRESH_DELAY = 2000L;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Runnable refreshTask = this::rebuildAsync;
+    private volatile Set<String> ignoredPackages;
+    private volatile String defaultDialer;
+    private BroadcastReceiver changeReceiver;
+
+    public SystemAppClassifier(Context context) {
+        this.context = context.getApplicationContext();
+        this.ignoredPackages = baselinePackages();
+    }
+
+    public void start() {
+        rebuildAsync();
+
+        changeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
+                    checkDefaultDialer();
+                    return;
+                }
+                // Installs and updates arrive in bursts - rebuild once they settle
+                handler.removeCallbacks(refreshTask);
+                handler.postDelayed(refreshTask, REFRESH_DELAY);
+            }
+        };
+
+        IntentFilter packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        ContextCompat.registerReceiver(context, changeReceiver, packageFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        IntentFilter roleFilter = new IntentFilter();
+        roleFilter.addAction(Intent.ACTION_INPUT_METHOD_CHANGED);
+        roleFilter.addAction(Intent.ACTION_SCREEN_ON);
+        ContextCompat.registerReceiver(context, changeReceiver, roleFilter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    public void stop() {
+        handler.removeCallbacks(refreshTask);
+        if (changeReceiver != null) {
+            try {
+                context.unregisterReceiver(changeReceiver);
+            } catch (IllegalArgumentException e) {
+                // Receiver was never registered
+            }
+            changeReceiver = null;
+        }
+        executor.shutdownNow();
+    }
+
+    public boolean isIgnored(String packageName) {
+        return ignoredPackages.contains(packageName);
+    }
+
+    private void rebuildAsync() {
+        executor.execute(() -> {
+            try {
+                Set<String> packages = buildIgnoredPackages();
+                ignoredPackages = Collections.unmodifiableSet(packages);
+                Log.d(TAG, "Classified " + packages.size() + " packages as system");
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to classify system packages", e);
+            }
+        });
+    }
+
+    // Rebuilds only when the default dialer differs from the one the current set was built with
+    private void checkDefaultDialer() {
+        executor.execute(() -> {
+            String dialer = readDefaultDialer();
+            if (dialer != null && !dialer.equals(defaultDialer)) {
+                Log.d(TAG, "Default dialer changed to " + dialer);
+                rebuildAsync();
+            }
+        });
+    }
+
+    private String readDefaultDialer() {
+        TelecomManager telecom = (TelecomManager) context.getSystemService(Context.TELECOM_SERVICE);
+        return telecom != null ? telecom.getDefaultDialerPackage() : null;
+    }
+
+    private Set<String> buildIgnoredPackages() {
+        PackageManager pm = context.getPackageManager();
+        Set<String> packages = baselinePackages();
+
+        // System components the user cannot open directly (launchable system apps like Chrome stay tracked)
+        Intent launcherIntent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_LAUNCHER);
+        Set<String> launchable = new HashSet<>();
+        for (ResolveInfo info : pm.queryIntentActivities(launcherIntent, 0)) {
+            launchable.add(info.activityInfo.packageName);
+        }
+        for (ApplicationInfo app : pm.getInstalledApplications(0)) {
+            if ((app.flags & ApplicationInfo.FLAG_SYSTEM) != 0 && !launchable.contains(app.packageName)) {
+                packages.add(app.packageName);
+            }
+        }
+
+        // Every home app, including OEM launchers
+        Intent homeIntent = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME);
+        for (ResolveInfo info : pm.queryIntentActivities(homeIntent, PackageManager.MATCH_DEFAULT_ONLY)) {
+            packages.add(info.activityInfo.packageName);
+        }
+
+        InputMethodManager imm = (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (imm != null) {
+            List<InputMethodInfo> keyboards = imm.getEnabledInputMethodList();
+            for (InputMethodInfo keyboard : keyboards) {
+                packages.add(keyboard.getPackageName());
+            }
+        }
+
+        TelecomManager telecom = (TelecomManager) context.getSystemService(Context.TELECOM_SERVICE);
+        if (telecom != null) {
+            defaultDialer = telecom.getDefaultDialerPackage();
+            addIfPresent(packages, defaultDialer);
+            addIfPresent(packages, telecom.getSystemDialerPackage());
+        }
+        return packages;
+    }
+
+    private Set<String> baselinePackages() {
+        Set<String> packages = new HashSet<>();
+        packages.add("android");
+        packages.add("com.android.systemui");
+        packages.add("com.android.settings");
+        packages.add("com.google.android.googlequicksearchbox");
+        packages.add(context.getPackageName());
+        return packages;
+    }
+
+    private static void addIfPresent(Set<String> packages, String packageName) {
+        if (packageName != null) {
+            packages.add(packageName);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.accountable;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import com.google.firebase.firestore.FirebaseFirestore;
+import java.util.HashMap;
+import java.util.Map;
+
+// Liveness record for the monitoring service, kept in heartbeats/{uid}.
+// While nothing changes the heartbeat backs off exponentially up to MAX_INTERVAL, so a healthy device
+// writes only a handful of times a day. State changes (disconnect, accessibility turned off) are written
+// immediately. Each record carries the deadline of the next one; a partner who sees it pass without a new
+// record knows the service was force-stopped or removed. Heartbeats are non-wakeup allow-while-idle
+// alarms: they never wake the device or hold a wakelock, and under Doze they arrive at the next
+// maintenance window, which is also when the network comes back. The alarm is received only while this
+// process is alive; the write is handed to Firestore, whose offline queue persists it until it uploads.
+public class TamperDetectionService {
+
+    private static final String TAG = "TamperDetection";
+
+    public static final String COLLECTION = "heartbeats";
+    public static final String STATE_ACTIVE = "active";
+    public static final String STATE_DISABLED = "disabled";
+    public static final String STATE_STOPPED = "stopped";
+
+    private static final long BASE_INTERVAL = 60 * 60 * 1000L;
+    private static final long MAX_INTERVAL = 8 * 60 * 60 * 1000L;
+    private static final String ACTION_HEARTBEAT = "com.example.accountable.action.HEARTBEAT";
+
+    private final Context context;
+    private final FirebaseFirestore db;
+    private final String userId;
+    private final AlarmManager alarmManager;
+    private final PendingIntent heartbeatAlarm;
+    private BroadcastReceiver heartbeatReceiver;
+
+    private String lastWrittenState;
+    private long interval = BASE_INTERVAL;
+    private long nextHeartbeatTime = 0L;
+
+    public TamperDetectionService(Context context, FirebaseFirestore db, String userId) {
+        this.context = context.getApplicationContext();
+        this.db = db;
+        this.userId = userId;
+        this.alarmManager = (AlarmManager) this.context.getSystemService(Context.ALARM_SERVICE);
+        Intent intent = new Intent(ACTION_HEARTBEAT).setPackage(this.context.getPackageName());
+        this.heartbeatAlarm = PendingIntent.getBroadcast(this.context, 0, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    public void start() {
+        heartbeatReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onHeartbeatDue();
+            }
+        };
+        ContextCompat.registerReceiver(context, heartbeatReceiver, new IntentFilter(ACTION_HEARTBEAT),
+                ContextCompat.RECEIVER_NOT_EXPORTED);
+
+        interval = BASE_INTERVAL;
+        recordState(STATE_ACTIVE);
+    }
+
+    // Called from the engine's periodic tick; writes a heartbeat whose alarm has not been delivered yet
+    public void onEngineTick() {
+        if (nextHeartbeatTime > 0 && System.currentTimeMillis() >= nextHeartbeatTime) {
+            onHeartbeatDue();
+        }
+    }
+
+    public void recordState(String state) {
+        if (!STATE_ACTIVE.equals(state) && lastWrittenState != null && !STATE_ACTIVE.equals(lastWrittenState)) {
+            // Keep the first reason the service went down (e.g. disabled, then destroyed)
+            return;
+        }
+        if (!state.equals(lastWrittenState)) {
+            // Any change restarts the backoff so the partner sees recovery quickly
+            interval = BASE_INTERVAL;
+        }
+        writeHeartbeat(state);
+
+        alarmManager.cancel(heartbeatAlarm);
+        if (STATE_ACTIVE.equals(state)) {
+            nextHeartbeatTime = System.currentTimeMillis() + interval;
+            alarmManager.setAndAllowWhileIdle(AlarmManager.RTC, nextHeartbeatTime, heartbeatAlarm);
+        } else {
+            nextHeartbeatTime = 0L;
+        }
+    }
+
+    public void stop() {
+        alarmManager.cancel(heartbeatAlarm);
+        nextHeartbeatTime = 0L;
+        if (heartbeatReceiver != null) {
+            try {
+                context.unregisterReceiver(heartbeatReceiver);
+            } catch (IllegalArgumentException e) {
+                // Receiver was never registered
+            }
+            heartbeatReceiver = null;
+        }
+    }
+
+    private void onHeartbeatDue() {
+        if (nextHeartbeatTime == 0L) {
+            // No longer active; the alarm outlived a stop
+            return;
+        }
+        interval = Math.min(interval * 2, MAX_INTERVAL);
+        recordState(STATE_ACTIVE);
+    }
+
+    private void writeHeartbeat(String state) {
+        long now = System.currentTimeMillis();
+        Map<String, Object> heartbeat = new HashMap<>();
+        heartbeat.put("state", state);
+        heartbeat.put("lastSeen", now);
+        // An inactive state has no next heartbeat; the partner flags it straight away
+        heartbeat.put("nextDeadline", STATE_ACTIVE.equals(state) ? now + interval * 2 : now);
+
+        lastWrittenState = state;
+        db.collection(COLLECTION).document(userId)
+                .set(heartbeat)
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Heartbeat written: " + state + ", next in " + (interval / 60000) + "min"))
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to write heartbeat", e));
+    }
+
+    // Partner side: a description of the problem, or null when the service looks healthy
+    public static String describeProblem(Map<String, Object> heartbeat, long now) {
+        if (heartbeat == null) {
+            return "Monitoring has never reported from this device";
+        }
+        Object state = heartbeat.get("state");
+        Object deadline = heartbeat.get("nextDeadline");
+        if (STATE_DISABLED.equals(state)) {
+            return "Accessibility monitoring was turned off";
+        }
+        if (STATE_STOPPED.equals(state)) {
+            return "Monitoring service was stopped";
+        }
+        if (deadline instanceof Number && now > ((Number) deadline).longValue()) {
+            return "Monitoring has stopped reporting";
+        }
+        return null;
+    }
+}
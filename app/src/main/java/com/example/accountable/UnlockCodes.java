@@ -0,0 +1,202 @@
+package com.example.accountable;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+import android.util.Log;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Transaction;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Time-based one-time unlock codes shared between a user and their partner.
+// A secret is created when the partnership is set up (unlockSecrets/{uid}) and cached on both devices.
+// The partner's code is an HMAC over (time step, duration), so the blocked device can verify it and
+// learn the granted duration completely offline. Codes are accepted one step either side of the current
+// one, and each accepted (step, duration) is remembered so a code cannot be replayed. About 15 of the
+// million possible codes are valid at any moment, so wrong guesses are rate limited: after a few, each
+// further one locks entry for twice as long as the last, and the count survives restarts.
+public final class UnlockCodes {
+
+    private static final String TAG = "UnlockCodes";
+    private static final String PREFS_NAME = "unlock_codes";
+    private static final String SECRET_PREFIX = "secret_";
+    private static final String USED_CODES = "used_codes";
+    private static final String FAILED_ATTEMPTS = "failed_attempts";
+    private static final String LAST_FAILURE = "last_failure";
+    private static final long TIME_STEP = 5 * 60 * 1000L;
+    private static final int CODE_MODULUS = 1000000;
+    private static final int FREE_ATTEMPTS = 3;
+    private static final long BASE_LOCKOUT = 60 * 1000L;
+    private static final long MAX_LOCKOUT = 24 * 60 * 60 * 1000L;
+
+    public static final int[] DURATION_MINUTES = {5, 10, 15, 30, 60};
+
+    private UnlockCodes() {
+    }
+
+    public static String getSecret(Context context, String userId) {
+        return prefs(context).getString(SECRET_PREFIX + userId, null);
+    }
+
+    public static void cacheSecret(Context context, String userId, String secret) {
+        prefs(context).edit().putString(SECRET_PREFIX + userId, secret).apply();
+    }
+
+    // Creates a fresh secret for userId and caches it on this device
+    public static void createSecret(Context context, FirebaseFirestore db, String userId, String partnerId) {
+        String secret = newSecret();
+        cacheSecret(context, userId, secret);
+        db.collection("unlockSecrets").document(userId)
+                .set(secretData(secret, partnerId))
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to store unlock secret", e));
+    }
+
+    // Called at pairing: adds a fresh secret to the partnership transaction. The caller caches the
+    // returned secret once the transaction commits, so a failed pairing leaves no secret behind.
+    public static String stageSecret(FirebaseFirestore db, Transaction transaction, String userId, String partnerId) {
+        String secret = newSecret();
+        transaction.set(db.collection("unlockSecrets").document(userId), secretData(secret, partnerId));
+        return secret;
+    }
+
+    private static String newSecret() {
+        byte[] bytes = new byte[20];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.encodeToString(bytes, Base64.NO_WRAP);
+    }
+
+    private static Map<String, Object> secretData(String secret, String partnerId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("secret", secret);
+        data.put("partnerId", partnerId);
+        data.put("createdAt", System.currentTimeMillis());
+        return data;
+    }
+
+    // Caches userId's secret while online so codes work later without a connection. The user's own device
+    // creates one if the partnership predates unlock codes.
+    public static Task<DocumentSnapshot> syncSecret(Context context, FirebaseFirestore db, String userId,
+                                                    String partnerIdIfOwner) {
+        return db.collection("unlockSecrets").document(userId)
+                .get()
+                .addOnSuccessListener(documentSnapshot -> {
+                    String secret = documentSnapshot.getString("secret");
+                    if (secret != null) {
+                        cacheSecret(context, userId, secret);
+                    } else if (partnerIdIfOwner != null) {
+                        createSecret(context, db, userId, partnerIdIfOwner);
+                    }
+                })
+                .addOnFailureListener(e -> Log.d(TAG, "Unlock secret not synced: " + e.getMessage()));
+    }
+
+    // Partner side: the code for unlocking the given number of minutes right now
+    public static String generate(String secret, int minutes, long now) {
+        return String.format(Locale.US, "%06d", compute(secret, now / TIME_STEP, minutes));
+    }
+
+    // How long code entry stays locked after wrong guesses; 0 when a code may be tried now
+    public static long lockoutRemaining(Context context, long now) {
+        SharedPreferences prefs = prefs(context);
+        int failures = prefs.getInt(FAILED_ATTEMPTS, 0);
+        if (failures < FREE_ATTEMPTS) {
+            return 0;
+        }
+        long lastFailure = prefs.getLong(LAST_FAILURE, 0L);
+        if (now < lastFailure) {
+            // The clock was turned back; stay locked until it passes the last failure again
+            return lastFailure - now + lockoutAfter(failures);
+        }
+        return Math.max(0, lastFailure + lockoutAfter(failures) - now);
+    }
+
+    private static long lockoutAfter(int failures) {
+        int doublings = Math.min(failures - FREE_ATTEMPTS, 20);
+        return Math.min(BASE_LOCKOUT << doublings, MAX_LOCKOUT);
+    }
+
+    // Blocked device: the minutes the code grants, or 0 if it is invalid, expired, already used or entry
+    // is locked out
+    public static int redeem(Context context, String userId, String code, long now) {
+        String secret = getSecret(context, userId);
+        if (secret == null || code == null || lockoutRemaining(context, now) > 0) {
+            return 0;
+        }
+        SharedPreferences prefs = prefs(context);
+        if (!code.matches("\\d{6}")) {
+            recordFailure(prefs, now);
+            return 0;
+        }
+        int value = Integer.parseInt(code);
+        long currentStep = now / TIME_STEP;
+
+        Set<String> used = new HashSet<>(prefs.getStringSet(USED_CODES, new HashSet<>()));
+        for (long step = currentStep - 1; step <= currentStep + 1; step++) {
+            for (int minutes : DURATION_MINUTES) {
+                if (compute(secret, step, minutes) != value) {
+                    continue;
+                }
+                String key = step + ":" + minutes;
+                if (used.contains(key)) {
+                    return 0;
+                }
+                // Only steps still inside the acceptance window need remembering
+                Set<String> kept = new HashSet<>();
+                for (String usedKey : used) {
+                    if (Long.parseLong(usedKey.substring(0, usedKey.indexOf(':'))) >= currentStep - 1) {
+                        kept.add(usedKey);
+                    }
+                }
+                kept.add(key);
+                prefs.edit()
+                        .putStringSet(USED_CODES, kept)
+                        .remove(FAILED_ATTEMPTS)
+                        .remove(LAST_FAILURE)
+                        .apply();
+                return minutes;
+            }
+        }
+        recordFailure(prefs, now);
+        return 0;
+    }
+
+    private static void recordFailure(SharedPreferences prefs, long now) {
+        // commit() rather than apply(): killing the app right after a guess must not lose the count
+        prefs.edit()
+                .putInt(FAILED_ATTEMPTS, prefs.getInt(FAILED_ATTEMPTS, 0) + 1)
+                .putLong(LAST_FAILURE, now)
+                .commit();
+    }
+
+    private static int compute(String secret, long step, int minutes) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(Base64.decode(secret, Base64.NO_WRAP), "HmacSHA1"));
+            byte[] hash = mac.doFinal(ByteBuffer.allocate(12).putLong(step).putInt(minutes).array());
+            // Dynamic truncation as in RFC 4226
+            int offset = hash[hash.length - 1] & 0x0f;
+            int binary = ((hash[offset] & 0x7f) << 24)
+                    | ((hash[offset + 1] & 0xff) << 16)
+                    | ((hash[offset + 2] & 0xff) << 8)
+                    | (hash[offset + 3] & 0xff);
+            return binary % CODE_MODULUS;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to compute unlock code", e);
+            return -1;
+        }
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
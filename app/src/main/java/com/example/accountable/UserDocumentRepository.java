@@ -0,0 +1,173 @@
+package com.example.accountable;
+
+import android.util.Log;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide copy of the signed-in user's users/{uid} document.
+// One snapshot listener keeps it current; screens read it through get() instead of issuing their own
+// document reads, so opening a screen after the first load costs no Firestore reads. Writes made
+// anywhere in the app show up here immediately through the listener's local-write events.
+// A cached snapshot saying the document does not exist is never handed out: offline or on a cold cache
+// it only means "not cached yet", and callers would show "no partner" or overwrite the profile. Callers
+// wait for the server's answer instead.
+public final class UserDocumentRepository {
+
+    private static final String TAG = "UserDocumentRepository";
+
+    private static UserDocumentRepository instance;
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final List<OnSuccessListener<DocumentSnapshot>> observers = new ArrayList<>();
+    private final List<OnSuccessListener<DocumentSnapshot>> waitingCallbacks = new ArrayList<>();
+    private final List<OnFailureListener> waitingFailures = new ArrayList<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private String userId;
+    private ListenerRegistration registration;
+    private DocumentSnapshot current;
+
+    private UserDocumentRepository() {
+    }
+
+    public static synchronized UserDocumentRepository getInstance() {
+        if (instance == null) {
+            instance = new UserDocumentRepository();
+        }
+        return instance;
+    }
+
+    // Delivers the current document - immediately when already loaded, otherwise once the listener's first
+    // snapshot arrives. Must be called on the main thread.
+    public void get(OnSuccessListener<DocumentSnapshot> onSuccess, OnFailureListener onFailure) {
+        if (!ensureListening()) {
+            if (onFailure != null) {
+                onFailure.onFailure(new IllegalStateException("No signed-in user"));
+            }
+            return;
+        }
+        if (isSettled(current)) {
+            hits.incrementAndGet();
+            onSuccess.onSuccess(current);
+            return;
+        }
+        misses.incrementAndGet();
+        waitingCallbacks.add(onSuccess);
+        waitingFailures.add(onFailure);
+    }
+
+    public void get(OnSuccessListener<DocumentSnapshot> onSuccess) {
+        get(onSuccess, null);
+    }
+
+    // Called with the current document (if loaded) and then on every change until removed.
+    // Must be called on the main thread.
+    public void observe(OnSuccessListener<DocumentSnapshot> observer) {
+        observers.add(observer);
+        if (ensureListening() && isSettled(current)) {
+            hits.incrementAndGet();
+            observer.onSuccess(current);
+        }
+    }
+
+    public void removeObserver(OnSuccessListener<DocumentSnapshot> observer) {
+        observers.remove(observer);
+    }
+
+    // The latest snapshot, which may still be an unconfirmed cached "missing" one
+    public DocumentSnapshot peek() {
+        return current;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    // Drops the listener and cached copy, e.g. on sign-out
+    public void clear() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        userId = null;
+        current = null;
+        waitingCallbacks.clear();
+        waitingFailures.clear();
+    }
+
+    private boolean ensureListening() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            clear();
+            return false;
+        }
+        if (user.getUid().equals(userId) && registration != null) {
+            return true;
+        }
+
+        // First use, or a different account signed in
+        clear();
+        userId = user.getUid();
+        // Metadata changes are included so a cached "missing" snapshot is followed by the server's answer
+        // even when the server agrees
+        registration = db.collection("users").document(userId)
+                .addSnapshotListener(MetadataChanges.INCLUDE, (documentSnapshot, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "User document listener failed", e);
+                        failWaiting(e);
+                        // Start over on the next request
+                        if (registration != null) {
+                            registration.remove();
+                            registration = null;
+                        }
+                        return;
+                    }
+                    if (documentSnapshot == null) {
+                        return;
+                    }
+                    current = documentSnapshot;
+                    if (!isSettled(documentSnapshot)) {
+                        return;
+                    }
+                    List<OnSuccessListener<DocumentSnapshot>> waiting = new ArrayList<>(waitingCallbacks);
+                    waitingCallbacks.clear();
+                    waitingFailures.clear();
+                    for (OnSuccessListener<DocumentSnapshot> callback : waiting) {
+                        callback.onSuccess(documentSnapshot);
+                    }
+                    for (OnSuccessListener<DocumentSnapshot> observer : new ArrayList<>(observers)) {
+                        observer.onSuccess(documentSnapshot);
+                    }
+                });
+        return true;
+    }
+
+    private static boolean isSettled(DocumentSnapshot snapshot) {
+        return snapshot != null && (snapshot.exists() || !snapshot.getMetadata().isFromCache());
+    }
+
+    private void failWaiting(Exception e) {
+        List<OnFailureListener> failures = new ArrayList<>(waitingFailures);
+        waitingCallbacks.clear();
+        waitingFailures.clear();
+        for (OnFailureListener failure : failures) {
+            if (failure != null) {
+                failure.onFailure(e);
+            }
+        }
+    }
+}
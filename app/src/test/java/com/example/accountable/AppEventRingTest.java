@@ -0,0 +1,140 @@
+package com.example.accountable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class AppEventRingTest {
+
+    private static final class Event {
+        final String packageName;
+        final int eventType;
+        final long timestamp;
+
+        Event(String packageName, int eventType, long timestamp) {
+            this.packageName = packageName;
+            this.eventType = eventType;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static List<Event> drainAll(AppEventRing ring) {
+        List<Event> events = new ArrayList<>();
+        ring.drain((packageName, eventType, timestamp) -> events.add(new Event(packageName, eventType, timestamp)));
+        return events;
+    }
+
+    @Test
+    public void deliversInOrderAcrossWraparound() {
+        AppEventRing ring = new AppEventRing(8);
+        long sequence = 0;
+        long expected = 0;
+        // Many laps of the ring, with batch sizes that do not divide its size
+        for (int round = 0; round < 100; round++) {
+            int batch = 1 + round % 7;
+            for (int i = 0; i < batch; i++) {
+                assertTrue(ring.publish("app" + (sequence % 3), (int) sequence, sequence));
+                sequence++;
+            }
+            for (Event event : drainAll(ring)) {
+                assertEquals(expected, event.timestamp);
+                assertEquals(expected, event.eventType);
+                assertEquals("app" + (expected % 3), event.packageName);
+                expected++;
+            }
+            assertTrue(ring.isEmpty());
+        }
+        assertEquals(sequence, expected);
+        assertEquals(0, ring.getOverflowCount());
+    }
+
+    @Test
+    public void fullRingDropsNewestAndCountsIt() {
+        AppEventRing ring = new AppEventRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.publish("app", i, i));
+        }
+        assertFalse(ring.publish("app", 4, 4));
+        assertFalse(ring.publish("app", 5, 5));
+        assertEquals(2, ring.getOverflowCount());
+
+        List<Event> events = drainAll(ring);
+        assertEquals(4, events.size());
+        assertEquals(3, events.get(3).timestamp);
+
+        // Space is available again once drained
+        assertTrue(ring.publish("app", 6, 6));
+        assertEquals(6, drainAll(ring).get(0).timestamp);
+        assertEquals(2, ring.getOverflowCount());
+    }
+
+    @Test
+    public void internsManyPackagesAndNull() {
+        AppEventRing ring = new AppEventRing(16);
+        // More names than the initial table holds, so it has to grow
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                assertTrue(ring.publish("com.example.app" + i, i, i));
+                Event event = drainAll(ring).get(0);
+                assertEquals("com.example.app" + i, event.packageName);
+            }
+        }
+        assertTrue(ring.publish(null, 0, 0));
+        assertNull(drainAll(ring).get(0).packageName);
+    }
+
+    @Test
+    public void producerAndConsumerThreadsAgree() throws Exception {
+        final int total = 2_000_000;
+        final int packages = 200;
+        AppEventRing ring = new AppEventRing(64);
+        AtomicReference<AssertionError> failure = new AtomicReference<>();
+        long[] received = new long[1];
+        long[] lastSeen = {-1};
+
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                ring.publish("pkg" + (i % packages), i % 5, i);
+            }
+        });
+        Thread consumer = new Thread(() -> {
+            AppEventRing.Consumer check = (packageName, eventType, timestamp) -> {
+                if (failure.get() != null) {
+                    return;
+                }
+                int i = (int) timestamp;
+                // Drops skip sequence numbers, but what arrives is ordered and intact
+                if (timestamp <= lastSeen[0]
+                        || eventType != i % 5
+                        || !("pkg" + (i % packages)).equals(packageName)) {
+                    failure.set(new AssertionError("Corrupt event " + timestamp + " " + eventType + " " + packageName
+                            + " after " + lastSeen[0]));
+                }
+                lastSeen[0] = timestamp;
+                received[0]++;
+            };
+            while (producer.isAlive() || !ring.isEmpty()) {
+                if (ring.drain(check) == 0) {
+                    Thread.yield();
+                }
+            }
+        });
+
+        // Producer first: the consumer stops once the producer has finished and the ring is empty
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        assertEquals(total, received[0] + ring.getOverflowCount());
+    }
+}
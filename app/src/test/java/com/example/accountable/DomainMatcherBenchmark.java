@@ -0,0 +1,71 @@
+package com.example.accountable;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Ignore;
+import org.junit.Test;
+
+// Per-URL match cost against a large block list. Timing depends on the machine, so this is run by hand:
+// ./gradlew :app:testDebugUnitTest --tests '*DomainMatcherBenchmark*' after removing @Ignore
+@Ignore("Benchmark; run by hand")
+public class DomainMatcherBenchmark {
+
+    private static final int DOMAINS = 5000;
+    private static final int URLS = 10_000;
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int MEASURED_ROUNDS = 50;
+
+    @Test
+    public void matchCostPerUrl() {
+        Random random = new Random(42);
+        List<String> domains = new ArrayList<>();
+        for (int i = 0; i < DOMAINS; i++) {
+            domains.add(randomLabel(random) + "." + randomLabel(random) + ".com");
+        }
+        DomainMatcher matcher = DomainMatcher.compile(domains);
+
+        // Mix of hits (subdomains of blocked sites) and misses, with paths and queries as browsers show them
+        String[] urls = new String[URLS];
+        for (int i = 0; i < URLS; i++) {
+            urls[i] = i % 4 == 0
+                    ? "https://m." + domains.get(random.nextInt(DOMAINS)) + "/watch?v=" + i
+                    : "https://www." + randomLabel(random) + ".org/articles/" + i;
+        }
+
+        int hits = 0;
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            hits += countHits(matcher, urls);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            hits += countHits(matcher, urls);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        double nanosPerUrl = (double) elapsed / ((long) MEASURED_ROUNDS * URLS);
+        System.out.printf("DomainMatcher: %.1f ns per URL against %d domains%n", nanosPerUrl, DOMAINS);
+        assertTrue(hits > 0);
+    }
+
+    private static int countHits(DomainMatcher matcher, String[] urls) {
+        int hits = 0;
+        for (String url : urls) {
+            if (matcher.match(url) != null) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static String randomLabel(Random random) {
+        int length = 4 + random.nextInt(8);
+        StringBuilder label = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            label.append((char) ('a' + random.nextInt(26)));
+        }
+        return label.toString();
+    }
+}
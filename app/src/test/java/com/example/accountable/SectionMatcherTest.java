@@ -0,0 +1,221 @@
+package com.example.accountable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SectionMatcherTest {
+
+    private static final String YOUTUBE = "com.google.android.youtube";
+    private static final String SHORTS_ID = "com.google.android.youtube:id/reel_recycler";
+    private static final int WINDOW = 7;
+
+    private static final class Node {
+        private static int nextKey = 1;
+        final int key = nextKey++;
+        final String viewId;
+        Node parent;
+        final List<Node> children = new ArrayList<>();
+
+        Node(String viewId) {
+            this.viewId = viewId;
+        }
+
+        Node add(Node child) {
+            child.parent = this;
+            children.add(child);
+            return child;
+        }
+
+        void clear() {
+            children.clear();
+        }
+    }
+
+    // Counts the calls that are IPCs on a real accessibility tree, and checks every node handed out is recycled
+    private static final class CountingTree implements SectionMatcher.NodeTree<Node> {
+        int viewIdReads;
+        int childReads;
+        int parentReads;
+        int outstanding;
+
+        int calls() {
+            return viewIdReads + childReads + parentReads;
+        }
+
+        void resetCounts() {
+            viewIdReads = 0;
+            childReads = 0;
+            parentReads = 0;
+        }
+
+        Node obtain(Node node) {
+            if (node != null) {
+                outstanding++;
+            }
+            return node;
+        }
+
+        @Override
+        public int key(Node node) {
+            return node.key;
+        }
+
+        @Override
+        public String viewId(Node node) {
+            viewIdReads++;
+            return node.viewId;
+        }
+
+        @Override
+        public int childCount(Node node) {
+            childReads++;
+            return node.children.size();
+        }
+
+        @Override
+        public Node child(Node node, int index) {
+            childReads++;
+            return obtain(node.children.get(index));
+        }
+
+        @Override
+        public Node parent(Node node) {
+            parentReads++;
+            return obtain(node.parent);
+        }
+
+        @Override
+        public void recycle(Node node) {
+            outstanding--;
+        }
+    }
+
+    private SectionMatcher matcher;
+    private CountingTree tree;
+    private Node toolbar;
+    private Node list;
+
+    @Before
+    public void setUp() {
+        matcher = new SectionMatcher();
+        matcher.setBlockedSections(Collections.singletonList("youtube_shorts"));
+        tree = new CountingTree();
+
+        // decor > content > frame > {toolbar, list > rows > {thumbnail, title}}
+        Node root = new Node("android:id/decor");
+        Node frame = root.add(new Node("android:id/content")).add(new Node("com.google.android.youtube:id/frame"));
+        toolbar = frame.add(new Node("com.google.android.youtube:id/toolbar"));
+        list = frame.add(new Node("com.google.android.youtube:id/results"));
+        bindRows(0);
+    }
+
+    private void bindRows(int offset) {
+        list.clear();
+        for (int i = 0; i < 6; i++) {
+            Node row = list.add(new Node("com.google.android.youtube:id/row_" + (offset + i)));
+            row.add(new Node("com.google.android.youtube:id/thumbnail"));
+            row.add(new Node("com.google.android.youtube:id/title"));
+        }
+    }
+
+    private SectionMatcher.Section match(Node source, boolean structural) {
+        return matcher.match(YOUTUBE, WINDOW, structural, tree.obtain(source), tree);
+    }
+
+    @Test
+    public void repeatedPropertyUpdatesAreServedFromCache() {
+        assertNull(match(list, false));
+        tree.resetCounts();
+        for (int i = 0; i < 100; i++) {
+            assertNull(match(list, false));
+        }
+        assertEquals(0, tree.calls());
+        assertEquals(0, tree.outstanding);
+    }
+
+    @Test
+    public void scrollingOnlyRewalksTheChangedSubtree() {
+        assertNull(match(toolbar, false));
+        assertNull(match(list, true));
+        tree.resetCounts();
+
+        int events = 200;
+        for (int i = 0; i < events; i++) {
+            bindRows(i);
+            assertNull(match(list, true));
+        }
+        // Ancestors are not walked again, and each event stays within one shallow subtree walk
+        assertEquals(0, tree.parentReads);
+        // The list, 6 rows and their 12 children: a view ID read each, plus the child lookups of list and rows
+        int perEvent = tree.calls() / events;
+        assertTrue("IPC calls per scroll event: " + perEvent, perEvent <= 19 + 1 + 6 + 6 * 3);
+
+        // The toolbar is outside the scrolled subtree and stays cached
+        tree.resetCounts();
+        assertNull(match(toolbar, false));
+        assertEquals(0, tree.calls());
+        assertEquals(0, tree.outstanding);
+    }
+
+    @Test
+    public void sectionAddedBelowAScrolledListIsFound() {
+        assertNull(match(list, true));
+        bindRows(6);
+        list.children.get(3).add(new Node(SHORTS_ID));
+        SectionMatcher.Section section = match(list, true);
+        assertNotNull(section);
+        assertEquals("youtube_shorts", section.key);
+        assertEquals(0, tree.outstanding);
+    }
+
+    @Test
+    public void changeReportedOnAnAncestorInvalidatesCachedDescendants() {
+        Node row = list.children.get(0);
+        Node title = row.children.get(1);
+        assertNull(match(title, false));
+
+        // A section deep below the title, reported on the list (too far below it for the list's own walk)
+        title.add(new Node("com.google.android.youtube:id/wrapper")).add(new Node(SHORTS_ID));
+        assertNull(match(list, true));
+
+        assertNotNull(match(title, false));
+        assertEquals(0, tree.outstanding);
+    }
+
+    @Test
+    public void changeInvalidatesNearAncestorsButNotUnrelatedNodes() {
+        Node row = list.children.get(0);
+        Node thumbnail = row.children.get(0);
+        assertNull(match(list, false));
+        assertNull(match(row, false));
+        assertNull(match(toolbar, false));
+
+        assertNull(match(thumbnail, true));
+        tree.resetCounts();
+        assertNull(match(toolbar, false));
+        assertEquals(0, tree.calls());
+
+        // The thumbnail is within the subtree walk of row and list, so both are examined again
+        assertNull(match(row, false));
+        assertTrue(tree.calls() > 0);
+        tree.resetCounts();
+        assertNull(match(list, false));
+        assertTrue(tree.calls() > 0);
+        assertEquals(0, tree.outstanding);
+    }
+
+    @Test
+    public void ignoresPackagesWithoutBlockedSections() {
+        assertNull(matcher.match("com.instagram.android", WINDOW, true, tree.obtain(list), tree));
+        assertEquals(0, tree.calls());
+        assertEquals(0, tree.outstanding);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.accountable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+
+public class SharedUsageCounterTest {
+
+    private static final String APP = "com.example.app";
+
+    private static Map<String, Map<String, Object>> snapshot(Object... deviceAndValue) {
+        Map<String, Object> slots = new HashMap<>();
+        for (int i = 0; i < deviceAndValue.length; i += 2) {
+            slots.put((String) deviceAndValue[i], deviceAndValue[i + 1]);
+        }
+        return Collections.singletonMap(APP, slots);
+    }
+
+    @Test
+    public void sumsEveryDevicesSlot() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        Set<String> changed = counter.applySnapshot(snapshot("phone", 5L, "tablet", 10L, "laptop", 20L), false);
+        assertEquals(Collections.singleton(APP), changed);
+        assertEquals(35L, counter.get(APP));
+    }
+
+    @Test
+    public void replayingASnapshotChangesNothing() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        counter.applySnapshot(snapshot("phone", 5L, "tablet", 10L), false);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(counter.applySnapshot(snapshot("phone", 5L, "tablet", 10L), false).isEmpty());
+            assertTrue(counter.applySnapshot(snapshot("phone", 5L, "tablet", 10L), true).isEmpty());
+        }
+        assertEquals(15L, counter.get(APP));
+    }
+
+    @Test
+    public void ownSlotTakesTheMaxOfLocalAndServer() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        counter.applySnapshot(snapshot("phone", 5L), false);
+        counter.add(APP, 10L);
+        // An older echo of our own write does not lower the slot
+        assertTrue(counter.applySnapshot(snapshot("phone", 8L), false).isEmpty());
+        assertEquals(15L, counter.get(APP));
+        // A higher server value is adopted
+        assertEquals(Collections.singleton(APP), counter.applySnapshot(snapshot("phone", 20L), false));
+        assertEquals(20L, counter.get(APP));
+    }
+
+    @Test
+    public void otherDevicesGrowTheTotal() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        counter.applySnapshot(snapshot("phone", 5L, "tablet", 10L), false);
+        assertEquals(Collections.singleton(APP), counter.applySnapshot(snapshot("phone", 5L, "tablet", 30L), false));
+        assertEquals(35L, counter.get(APP));
+    }
+
+    @Test
+    public void restartAddsLocalUsageOnTopOfTheServerSlot() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        // Counted by the new process before the server answered
+        counter.add(APP, 3L);
+        // Cached copies are not restored: the server copy would otherwise be counted twice
+        counter.applySnapshot(snapshot("phone", 40L, "tablet", 10L), true);
+        assertEquals(13L, counter.get(APP));
+
+        counter.applySnapshot(snapshot("phone", 40L, "tablet", 10L), false);
+        assertEquals(53L, counter.get(APP));
+        // Only the first server snapshot restores; later ones are merged by max
+        counter.applySnapshot(snapshot("phone", 40L, "tablet", 10L), false);
+        assertEquals(53L, counter.get(APP));
+    }
+
+    @Test
+    public void ignoresNonNumericSlots() {
+        SharedUsageCounter counter = new SharedUsageCounter(null, null, "phone");
+        counter.applySnapshot(snapshot("phone", 5L, "tablet", "corrupt", "laptop", 7), false);
+        assertEquals(12L, counter.get(APP));
+    }
+}